@@ -0,0 +1,153 @@
+package org.thingai.platform.dao;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thingai.base.dao.EntityMetadata;
+import org.thingai.base.dao.RowMapper;
+import org.thingai.base.dao.RowMappers;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row mapping through {@link RowMappers} against the reflection path DaoSqlite used before:
+ * {@code Field.set} with {@code getObject(columnName)} per cell, {@code Field.get} with
+ * {@code setObject} per parameter. Both read the same in-memory SQLite result set, so the
+ * difference is the mapping alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    @DaoTable(name = "reading")
+    public static class Reading {
+        @DaoColumn(primaryKey = true)
+        public long id;
+        @DaoColumn
+        public int sensor;
+        @DaoColumn
+        public double value;
+        @DaoColumn
+        public boolean valid;
+        @DaoColumn
+        public Long timestamp;
+        @DaoColumn
+        public String unit;
+    }
+
+    @Param({"1000"})
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement select;
+    private PreparedStatement insert;
+    private RowMapper<Reading> mapper;
+    private Field[] fields;
+    private String[] columnNames;
+    private Reading sample;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        EntityMetadata<Reading> metadata = EntityMetadata.of(Reading.class);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(metadata.getCreateTableSql());
+        }
+        mapper = RowMappers.of(Reading.class);
+        insert = connection.prepareStatement(metadata.getInsertOrReplaceSql());
+        for (int i = 0; i < rows; i++) {
+            mapper.bind(insert, reading(i));
+            insert.executeUpdate();
+        }
+        select = connection.prepareStatement(metadata.getSelectAllSql());
+
+        EntityMetadata.Column[] columns = metadata.getColumns();
+        fields = new Field[columns.length];
+        columnNames = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = columns[i].field;
+            columnNames[i] = columns[i].name;
+        }
+        sample = reading(7);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    private static Reading reading(int i) {
+        Reading reading = new Reading();
+        reading.id = i;
+        reading.sensor = i % 16;
+        reading.value = i * 0.5;
+        reading.valid = i % 3 != 0;
+        reading.timestamp = 1_700_000_000_000L + i;
+        reading.unit = "C";
+        return reading;
+    }
+
+    @Benchmark
+    public void mapReflection(Blackhole blackhole) throws Exception {
+        try (ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                Reading reading = Reading.class.getDeclaredConstructor().newInstance();
+                for (int i = 0; i < fields.length; i++) {
+                    Field field = fields[i];
+                    if (field.getType() == boolean.class || field.getType() == Boolean.class) {
+                        field.set(reading, resultSet.getInt(columnNames[i]) != 0);
+                        continue;
+                    }
+                    Object value = resultSet.getObject(columnNames[i]);
+                    // getObject returns Integer for small INTEGER values, the old path widened them the same way
+                    if (value instanceof Number && (field.getType() == long.class || field.getType() == Long.class)) {
+                        value = ((Number) value).longValue();
+                    }
+                    field.set(reading, value);
+                }
+                blackhole.consume(reading);
+            }
+        }
+    }
+
+    @Benchmark
+    public void mapMethodHandles(Blackhole blackhole) throws SQLException {
+        int[] ordinals = mapper.getMetadata().getSelectOrdinals();
+        try (ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(mapper.map(resultSet, ordinals));
+            }
+        }
+    }
+
+    @Benchmark
+    public void bindReflection() throws Exception {
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            Object value = field.get(sample);
+            if (field.getType() == boolean.class || field.getType() == Boolean.class) {
+                value = value != null && (Boolean) value ? 1 : 0;
+            }
+            insert.setObject(i + 1, value);
+        }
+        insert.clearParameters();
+    }
+
+    @Benchmark
+    public void bindMethodHandles() throws SQLException {
+        mapper.bind(insert, sample);
+        insert.clearParameters();
+    }
+}
@@ -0,0 +1,89 @@
+package org.thingai.platform.dao;
+
+import org.openjdk.jmh.annotations.*;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of concurrent writers and readers on one database file, with the historical
+ * single pool ({@code defaults}) and with WAL plus the writer/reader split ({@code performance}).
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqliteConcurrencyBenchmark {
+    private static final int ROWS = 10_000;
+
+    @DaoTable(name = "reading")
+    public static class Reading {
+        @DaoColumn(primaryKey = true)
+        public int id;
+        @DaoColumn
+        public double value;
+        @DaoColumn
+        public String unit;
+
+        public Reading() {
+
+        }
+
+        Reading(int id, double value) {
+            this.id = id;
+            this.value = value;
+            this.unit = "C";
+        }
+    }
+
+    @Param({"defaults", "performance"})
+    public String profile;
+
+    private Path directory;
+    private DaoSqlite dao;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sqlite-bench");
+        dao = new DaoSqlite(directory.resolve("bench.db").toString(),
+                profile.equals("performance") ? SqliteProfile.performance() : SqliteProfile.defaults());
+        dao.initDao(new Class<?>[]{Reading.class});
+        Reading[] readings = new Reading[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            readings[i] = new Reading(i, i);
+        }
+        dao.insertBatch(readings);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dao.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void write() {
+        int id = ThreadLocalRandom.current().nextInt(ROWS);
+        dao.insertOrUpdate(new Reading(id, ThreadLocalRandom.current().nextDouble()));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public Reading read() {
+        return dao.findById(Reading.class, ThreadLocalRandom.current().nextInt(ROWS));
+    }
+}
@@ -1,10 +1,80 @@
 package org.thingai.platform.dao;
 
-import java.io.*;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.thingai.base.cache.ConcurrentLRUCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Reads and writes whole JSON documents under a root directory. Files are read through a
+ * {@link FileChannel} into a heap buffer; recently read files are kept in memory and served again
+ * while their size, mtime and file key are unchanged. Writes go to a temp file that is moved over
+ * the target, so readers and crashes never see a torn file. Nothing is memory mapped: a mapping
+ * stays until the buffer is collected and would block the replace on Windows. Objects,
+ * JSON arrays and JSON lines files are also read and written directly on the channel with
+ * Jackson's streaming API, element by element for arrays and lines.
+ */
 public class DaoFile {
+    // Largest array the JVM reliably allocates
+    private static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    private static class CachedFile {
+        final long size;
+        final long modifiedTime;
+        final Object fileKey;
+        final String content;
+
+        CachedFile(BasicFileAttributes attributes, String content) {
+            this.size = attributes.size();
+            this.modifiedTime = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            this.content = content;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && modifiedTime == attributes.lastModifiedTime().toMillis()
+                    && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+
     private String rootPath;
+    private final ConcurrentLRUCache<Path, CachedFile> cache = new ConcurrentLRUCache<>(64);
+    private long maxCachedFileSize = 1024 * 1024;
+    private boolean syncWrites;
+    private ObjectMapper objectMapper = new ObjectMapper();
 
     public DaoFile(String rootPath) {
         this.rootPath = rootPath;
@@ -16,32 +86,326 @@ public class DaoFile {
 
     public void setRootPath(String rootPath) {
         this.rootPath = rootPath;
+        cache.clear();
+    }
+
+    public long getMaxCachedFileSize() {
+        return maxCachedFileSize;
+    }
+
+    // Larger files are read on every call, zero disables the cache
+    public void setMaxCachedFileSize(long maxCachedFileSize) {
+        this.maxCachedFileSize = maxCachedFileSize;
+        cache.clear();
+    }
+
+    public boolean isSyncWrites() {
+        return syncWrites;
+    }
+
+    // fsync the data and the directory entry before a write returns, durable across power loss
+    public void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    // Used by the typed and streaming methods, e.g. to register modules
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
     }
 
     public String readJsonFile(String filePath) throws IOException {
-        File file = new File(rootPath, filePath);
+        Path file = resolve(filePath);
 
-        if (!file.exists()) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            cache.remove(file);
             return null;
         }
 
-        StringBuilder content = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new FileReader(file));
+        CachedFile cached = cache.get(file);
+        if (cached != null && cached.matches(attributes)) {
+            return cached.content;
+        }
 
-        reader.lines().forEach(line -> content.append(line).append("\n"));
+        String content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            content = read(channel);
+        }
+        if (attributes.size() <= maxCachedFileSize) {
+            // Attributes from before the read, a concurrent change is caught on the next read
+            cache.put(file, new CachedFile(attributes, content));
+        }
+        return content;
+    }
 
-        reader.close();
+    public void writeJsonFile(String filePath, String content) throws IOException {
+        Path file = resolve(filePath);
+        BasicFileAttributes attributes = writeAtomically(file, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
 
-        return content.toString();
+        // Attributes of this write's own file, a later write over it does not match them
+        if (attributes.size() <= maxCachedFileSize) {
+            cache.put(file, new CachedFile(attributes, content));
+        }
     }
 
-    public void writeJsonFile(String filePath, String content) throws IOException {
-        File file = new File(rootPath, filePath);
+    // Binds the file to an object without building the document as a String first
+    public <T> T readObject(String filePath, Class<T> type) throws IOException {
+        Path file = resolve(filePath);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             JsonParser parser = objectMapper.getFactory().createParser(Channels.newInputStream(channel))) {
+            return objectMapper.readValue(parser, type);
+        }
+    }
 
-        file.getParentFile().mkdirs();
+    public void writeObject(String filePath, Object value) throws IOException {
+        Path file = resolve(filePath);
+        writeAtomically(file, channel -> {
+            try (JsonGenerator generator = createGenerator(channel)) {
+                writer().writeValue(generator, value);
+            }
+        });
+    }
 
-        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-        writer.write(content);
-        writer.close();
+    /**
+     * Writes the elements as one JSON array, serializing each as it is taken from the iterator, so
+     * the whole collection never has to be in memory.
+     */
+    public void writeArray(String filePath, Iterator<?> elements) throws IOException {
+        Path file = resolve(filePath);
+        ObjectWriter writer = writer();
+        writeAtomically(file, channel -> {
+            try (JsonGenerator generator = createGenerator(channel)) {
+                generator.writeStartArray();
+                while (elements.hasNext()) {
+                    writer.writeValue(generator, elements.next());
+                }
+                generator.writeEndArray();
+            }
+        });
+    }
+
+    /**
+     * Streams the elements of a JSON array file, reading one element at a time. Empty when the
+     * file does not exist. The stream holds the file open, close it (try-with-resources).
+     */
+    public <T> Stream<T> streamArray(String filePath, Class<T> type) throws IOException {
+        Path file = resolve(filePath);
+        if (!Files.exists(file)) {
+            return Stream.empty();
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            JsonParser parser = objectMapper.getFactory().createParser(Channels.newInputStream(channel));
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                parser.close();
+                throw new IOException("Expected a JSON array in " + file);
+            }
+            ObjectReader reader = objectMapper.readerFor(type);
+            Iterator<T> iterator = new Iterator<T>() {
+                private JsonToken next = advance();
+
+                @Override
+                public boolean hasNext() {
+                    return next != JsonToken.END_ARRAY && next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        T value = reader.readValue(parser);
+                        next = advance();
+                        return value;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                private JsonToken advance() {
+                    try {
+                        return parser.nextToken();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            return toStream(iterator, parser, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Appends one JSON value per line, the existing content is never rewritten
+    public void appendJsonLine(String filePath, Object value) throws IOException {
+        appendJsonLines(filePath, Collections.singleton(value).iterator());
+    }
+
+    public void appendJsonLines(String filePath, Iterator<?> values) throws IOException {
+        Path file = resolve(filePath);
+        Files.createDirectories(file.getParent());
+        ObjectWriter writer = writer();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            try (JsonGenerator generator = createGenerator(channel)) {
+                generator.setRootValueSeparator(null);
+                while (values.hasNext()) {
+                    writer.writeValue(generator, values.next());
+                    generator.writeRaw('\n');
+                }
+            }
+            if (syncWrites) {
+                channel.force(false);
+            }
+        }
+        cache.remove(file);
+    }
+
+    // Streams the values of a JSON lines file, empty when the file does not exist, close it when done
+    public <T> Stream<T> streamJsonLines(String filePath, Class<T> type) throws IOException {
+        Path file = resolve(filePath);
+        if (!Files.exists(file)) {
+            return Stream.empty();
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            JsonParser parser = objectMapper.getFactory().createParser(Channels.newInputStream(channel));
+            MappingIterator<T> iterator = objectMapper.readerFor(type).readValues(parser);
+            return toStream(iterator, parser, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path resolve(String filePath) {
+        return Paths.get(rootPath, filePath).toAbsolutePath();
+    }
+
+    private static String read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > MAX_FILE_SIZE) {
+            throw new IOException("File too large to read as a string: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Until full or end of file
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Writes a temp file next to the target and moves it over the target once complete. Returns the
+     * attributes of the written file, read before the move; a rename keeps size, mtime and file key.
+     */
+    private BasicFileAttributes writeAtomically(Path file, ChannelWriter contentWriter) throws IOException {
+        Path directory = file.getParent();
+        Files.createDirectories(directory);
+
+        Path temp = null;
+        BasicFileAttributes attributes;
+        try {
+            FileChannel channel = null;
+            while (channel == null) {
+                temp = directory.resolve(file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+                try {
+                    // Default attributes, unlike createTempFile which makes the file owner only
+                    channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                } catch (FileAlreadyExistsException e) {
+                    // Taken by another writer, pick another name
+                }
+            }
+            try (FileChannel written = channel) {
+                copyPermissions(file, temp);
+                contentWriter.write(written);
+                if (syncWrites) {
+                    written.force(true);
+                }
+            }
+            attributes = Files.readAttributes(temp, BasicFileAttributes.class);
+            move(temp, file);
+        } catch (IOException | RuntimeException e) {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+            throw e;
+        }
+        if (syncWrites) {
+            syncDirectory(directory);
+        }
+        cache.remove(file);
+        return attributes;
+    }
+
+    // A replaced file keeps its permissions, on file systems that have POSIX permissions
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        if (Files.getFileAttributeView(target, PosixFileAttributeView.class) == null) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+        } catch (NoSuchFileException e) {
+            // New file, the defaults apply
+        }
+    }
+
+    private JsonGenerator createGenerator(FileChannel channel) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(Channels.newOutputStream(channel), JsonEncoding.UTF8);
+        // The channel is closed by its owner
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    // Flushing after each value would cost a write call per element
+    private ObjectWriter writer() {
+        return objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    private static <T> Stream<T> toStream(Iterator<T> iterator, JsonParser parser, FileChannel channel) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        parser.close();
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Makes the rename durable, not supported on every platform (e.g. Windows) so failures are ignored
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
     }
 }
@@ -0,0 +1,1527 @@
+package org.thingai.platform.dao;
+
+import org.thingai.base.dao.BatchInsertException;
+import org.thingai.base.dao.Dao;
+import org.thingai.base.dao.EntityMetadata;
+import org.thingai.base.dao.Query;
+import org.thingai.base.log.ILog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link Dao#FILE} backend: a log-structured store for append heavy tables. Every write is
+ * appended to the active segment file ({@link SegmentRecord} format) and an in-memory index maps
+ * each primary key to the offset of its latest record, so a lookup is one positioned read. A
+ * single writer thread appends whatever callers queued in one write and one fsync (group
+ * commit). Full segments are sealed with a hint file listing their records, which is all that has
+ * to be read on startup; only the active segment is scanned. A background task rewrites the live
+ * records of segments that are mostly dead and deletes them.
+ *
+ * <p>Queries run over the index in memory; raw SQL is not supported.
+ */
+public class DaoSegmentStore implements Dao, AutoCloseable {
+    private static final String TAG = "DaoSegmentStore";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String HINT_SUFFIX = ".hint";
+    private static final int MAX_GROUP_SIZE = 1024;
+    private static final int RELOCATION_CHUNK = 1000;
+    private static final int SCAN_WINDOW = 1024 * 1024;
+
+    // Latest record of a key, sequence decides between records on replay
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final long sequence;
+
+        Location(int segment, long offset, int length, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicLong deadBytes = new AtomicLong();
+        // DELETE and CLEAR records, dead only once no older segment is left for them to shadow
+        final AtomicLong tombstoneBytes = new AtomicLong();
+        volatile long size;
+        // Readers have their own channel, an interrupted read closes it and not the writer's
+        private volatile FileChannel readChannel;
+        private boolean closed;
+
+        Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        // Opened again when an interrupt closed it, ClosedChannelException once the segment is closed
+        FileChannel readChannel() throws IOException {
+            FileChannel current = readChannel;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                if (readChannel == null || !readChannel.isOpen()) {
+                    readChannel = FileChannel.open(path, StandardOpenOption.READ);
+                }
+                return readChannel;
+            }
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            try {
+                if (readChannel != null) {
+                    readChannel.close();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Record as listed in a hint file
+    private static class HintEntry {
+        final byte type;
+        final long sequence;
+        final String table;
+        final String key;
+        final int segment;
+        final long offset;
+        final int length;
+
+        HintEntry(byte type, long sequence, String table, String key, int segment, long offset, int length) {
+            this.type = type;
+            this.sequence = sequence;
+            this.table = table;
+            this.key = key;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // New record, or an existing one moved by compaction (record and previous set)
+    private static class Write {
+        final byte type;
+        final String table;
+        final String key;
+        final byte[] body;
+        final ByteBuffer record;
+        final Location previous;
+
+        Write(byte type, String table, String key, byte[] body) {
+            this(type, table, key, body, null, null);
+        }
+
+        Write(byte type, String table, String key, byte[] body, ByteBuffer record, Location previous) {
+            this.type = type;
+            this.table = table;
+            this.key = key;
+            this.body = body;
+            this.record = record;
+            this.previous = previous;
+        }
+
+        int size() {
+            return record != null ? record.remaining() : SegmentRecord.size(body);
+        }
+    }
+
+    private static class Batch {
+        final List<Write> writes;
+        final boolean sync;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Batch(List<Write> writes, boolean sync) {
+            this.writes = writes;
+            this.sync = sync;
+        }
+    }
+
+    // Records of a segment in order, read with positioned reads through one reused heap buffer so
+    // nothing stays mapped when the file is truncated or deleted
+    private static class SegmentScanner {
+        private final Segment segment;
+        private ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        // File offset of the window start
+        private long base;
+        private int recordStart;
+
+        SegmentScanner(Segment segment) {
+            this.segment = segment;
+            window.limit(0);
+        }
+
+        // Offset of the next record, or where next() stopped
+        long offset() {
+            return base + window.position();
+        }
+
+        // Null at the end of the segment and at a torn or corrupt record
+        SegmentRecord next() throws IOException {
+            while (true) {
+                recordStart = window.position();
+                SegmentRecord record = SegmentRecord.read(window);
+                if (record != null || base + window.limit() >= segment.size) {
+                    return record;
+                }
+                int needed = SegmentRecord.HEADER_SIZE;
+                if (window.remaining() >= SegmentRecord.HEADER_SIZE) {
+                    needed += window.getInt(window.position() + 4);
+                }
+                if (needed < SegmentRecord.HEADER_SIZE || needed > segment.size - offset() || needed <= window.remaining()) {
+                    return null;
+                }
+                base = offset();
+                window.compact();
+                if (window.capacity() < needed) {
+                    window.flip();
+                    window = ByteBuffer.allocate(needed).put(window);
+                }
+                window.limit((int) Math.min(window.capacity(), segment.size - base));
+                readFully(segment, segment.channel, window, base + window.position());
+                window.flip();
+            }
+        }
+
+        // Bytes of the record next() returned, copied out of the window
+        ByteBuffer copy() {
+            ByteBuffer bytes = window.duplicate();
+            bytes.position(recordStart);
+            bytes.limit(window.position());
+            return ByteBuffer.allocate(bytes.remaining()).put(bytes).flip();
+        }
+    }
+
+    private static class Row {
+        final String key;
+        final Map<String, Object> values;
+
+        Row(String key, Map<String, Object> values) {
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Location>> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> autoIncrements = new ConcurrentHashMap<>();
+    private final AtomicLong rowIds = new AtomicLong();
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(4096);
+    private final Thread writerThread;
+    private final ScheduledThreadPoolExecutor compactor;
+    private final Object compactionLock = new Object();
+    private ScheduledFuture<?> compactionTask;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    // Written by the writer thread only
+    private volatile Segment active;
+    private final List<HintEntry> activeHints = new ArrayList<>();
+    private long sequence;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private long maxSegmentSize = 64L * 1024 * 1024;
+    private int batchSize = 1000;
+    private volatile boolean syncWrites = true;
+    private volatile double compactionThreshold = 0.5;
+
+    public DaoSegmentStore(String dataDir) {
+        this.directory = Paths.get(dataDir).toAbsolutePath();
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open segment store at " + directory, e);
+        }
+
+        this.writerThread = new Thread(this::run, TAG + "-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+
+        this.compactor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, TAG + "-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setCompactionInterval(60, TimeUnit.SECONDS);
+    }
+
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        // Records are read through int sized buffers
+        if (maxSegmentSize < 1024 || maxSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1024 and " + Integer.MAX_VALUE + " bytes.");
+        }
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Rows per group commit in insertBatch
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public boolean isSyncWrites() {
+        return syncWrites;
+    }
+
+    // fsync each group before its writes return, off trades the last writes on power loss for speed
+    public void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    // Dead fraction of a sealed segment above which it is compacted
+    public void setCompactionThreshold(double compactionThreshold) {
+        if (compactionThreshold <= 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("Compaction threshold must be in (0, 1].");
+        }
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public synchronized void setCompactionInterval(long interval, TimeUnit unit) {
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+        }
+        compactionTask = interval > 0 ? compactor.scheduleWithFixedDelay(this::compact, interval, interval, unit) : null;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        compactor.shutdownNow();
+        running = false;
+        try {
+            writerThread.join();
+            active.channel.force(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // Submitted after the writer's last poll
+        failQueued();
+        for (Segment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void initDao(Class<?>[] classes) {
+        ILog.d(TAG, "Initializing segment store at: ", directory.toString());
+        for (Class<?> clazz : classes) {
+            EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+            EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+            if (primaryKeys.length == 1 && primaryKeys[0].autoIncrement) {
+                // Continue after the highest id already stored
+                long max = 0;
+                for (String key : tableIndex(metadata.getTableName()).keySet()) {
+                    try {
+                        max = Math.max(max, Long.parseLong(key));
+                    } catch (NumberFormatException e) {
+                        // Not generated by us
+                    }
+                }
+                autoIncrements.computeIfAbsent(metadata.getTableName(), table -> new AtomicLong()).accumulateAndGet(max, Math::max);
+            }
+        }
+    }
+
+    @Override
+    public <T> T[] readAll(Class<T> clazz) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return stream.toArray(size -> newArray(clazz, size));
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to read all records.");
+        }
+    }
+
+    @Override
+    public <T> void insertOrUpdate(T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot insert null object.");
+        }
+        insertOrUpdate(classOf(t), t);
+    }
+
+    @Override
+    public <T> void insertOrUpdate(Class<T> clazz, T t) {
+        write(submit(Collections.singletonList(putWrite(EntityMetadata.of(clazz), t)), false));
+    }
+
+    @Override
+    public <T> void insertBatch(T[] t) {
+        insertBatch(Arrays.asList(t));
+    }
+
+    @Override
+    public <T> void insertBatch(Iterable<T> items) {
+        if (items == null) {
+            throw new IllegalArgumentException("Cannot insert null batch.");
+        }
+
+        // Chunks are pipelined, the next one is encoded while the writer appends the previous one
+        int chunkIndex = 0;
+        long committedRows = 0;
+        long pendingRows = 0;
+        CompletableFuture<Void> pending = null;
+        List<Write> chunk = new ArrayList<>();
+        try {
+            for (T item : items) {
+                if (item == null) {
+                    throw new IllegalArgumentException("Cannot insert null object.");
+                }
+                chunk.add(putWrite(EntityMetadata.of(classOf(item)), item));
+                if (chunk.size() == batchSize) {
+                    if (pending != null) {
+                        pending.join();
+                        committedRows += pendingRows;
+                        chunkIndex++;
+                    }
+                    pending = submit(chunk, false);
+                    pendingRows = chunk.size();
+                    chunk = new ArrayList<>();
+                }
+            }
+            if (pending != null) {
+                pending.join();
+                committedRows += pendingRows;
+                chunkIndex++;
+            }
+            if (!chunk.isEmpty()) {
+                submit(chunk, false).join();
+            }
+        } catch (CompletionException e) {
+            ILog.e(TAG, "Batch insert failed in chunk " + chunkIndex + ": " + e.getCause().getMessage());
+            throw new BatchInsertException(chunkIndex, committedRows, e.getCause());
+        } catch (RuntimeException e) {
+            ILog.e(TAG, "Batch insert failed in chunk " + chunkIndex + ": " + e.getMessage());
+            throw new BatchInsertException(chunkIndex, committedRows, e);
+        }
+    }
+
+    @Override
+    public <T, K> void delete(Class<T> clazz, K id) {
+        write(submitDelete(clazz, id));
+    }
+
+    @Override
+    public <T> void delete(T t) {
+        write(submitDelete(t));
+    }
+
+    @Override
+    public <T> void deleteByColumn(Class<T> clazz, String column, String value) {
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        checkColumn(metadata, column);
+        String table = metadata.getTableName();
+        List<Write> writes = new ArrayList<>();
+        try (Stream<Row> rows = rows(table)) {
+            rows.filter(row -> matchesText(row.values.get(column), value))
+                    .forEach(row -> writes.add(new Write(SegmentRecord.DELETE, table, row.key,
+                            SegmentRecord.body(table, row.key, metadata, null))));
+        }
+        if (!writes.isEmpty()) {
+            write(submit(writes, false));
+        }
+    }
+
+    @Override
+    public <T> void deleteAll(Class<T> clazz) {
+        String table = EntityMetadata.of(clazz).getTableName();
+        write(submit(Collections.singletonList(new Write(SegmentRecord.CLEAR, table, "",
+                SegmentRecord.body(table, "", null, null))), false));
+    }
+
+    // Completes once the write is appended and, with sync writes, on disk
+    public <T> CompletableFuture<Void> submitInsertOrUpdate(T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot insert null object.");
+        }
+        return submit(Collections.singletonList(putWrite(EntityMetadata.of(classOf(t)), t)), false);
+    }
+
+    public <T> CompletableFuture<Void> submitDelete(T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot delete null object.");
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(classOf(t));
+        if (metadata.getPrimaryKeys().length == 0) {
+            throw new IllegalArgumentException("Cannot delete " + metadata.getTableName() + " without primary key.");
+        }
+        return submitDeleteKey(metadata, keyOf(metadata, t));
+    }
+
+    public <T, K> CompletableFuture<Void> submitDelete(Class<T> clazz, K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot delete with null id.");
+        }
+        return submitDeleteKey(EntityMetadata.of(clazz), keyOfId(id));
+    }
+
+    @Override
+    public <T, K> T findById(Class<T> clazz, K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot find with null id.");
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        try {
+            Row row = readRow(metadata.getTableName(), keyOfId(id));
+            return row != null ? toEntity(metadata, row.values, Collections.emptyList()) : null;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String column, String value) {
+        try (Stream<T> stream = stream(clazz, column, value)) {
+            return stream.toArray(size -> newArray(clazz, size));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return newArray(clazz, 0);
+        }
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String[] column, String[] value) {
+        if (column == null || value == null || column.length != value.length) {
+            throw new IllegalArgumentException("Cannot read with null or mismatched columns and values.");
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        for (String name : column) {
+            checkColumn(metadata, name);
+        }
+        try (Stream<T> stream = entities(metadata, row -> {
+            for (int i = 0; i < column.length; i++) {
+                if (!matchesText(row.values.get(column[i]), value[i])) {
+                    return false;
+                }
+            }
+            return true;
+        })) {
+            return stream.toArray(size -> newArray(clazz, size));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return newArray(clazz, 0);
+        }
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String query) {
+        throw rawSqlUnsupported();
+    }
+
+    @Override
+    public <T> T[] query(Query<T> query) {
+        try (Stream<T> stream = stream(query)) {
+            return stream.toArray(size -> newArray(query.getEntityClass(), size));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return newArray(query.getEntityClass(), 0);
+    }
+
+    @Override
+    public Map<String, Object>[] queryRaw(String query) {
+        throw rawSqlUnsupported();
+    }
+
+    // Rows in write order, read lazily from a snapshot of the index
+    @Override
+    public <T> Stream<T> streamAll(Class<T> clazz) {
+        return entities(EntityMetadata.of(clazz), row -> true);
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String column, String value) {
+        if (column == null || value == null) {
+            throw new IllegalArgumentException("Cannot read with null column or value.");
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        checkColumn(metadata, column);
+        return entities(metadata, row -> matchesText(row.values.get(column), value));
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String query) {
+        throw rawSqlUnsupported();
+    }
+
+    @Override
+    public <T> Stream<T> stream(Query<T> query) {
+        EntityMetadata<T> metadata = query.getMetadata();
+        List<Predicate<Row>> filters = new ArrayList<>();
+        for (Query.Predicate predicate : query.getPredicates()) {
+            filters.add(compile(metadata, predicate));
+        }
+        Stream<Row> rows = rows(metadata.getTableName())
+                .filter(row -> {
+                    for (Predicate<Row> filter : filters) {
+                        if (!filter.test(row)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+
+        List<Query.Order> orders = query.getOrders();
+        if (!orders.isEmpty()) {
+            Comparator<Map<String, Object>> comparator = (a, b) -> compareOrder(orders, a, b);
+            rows = rows.sorted((a, b) -> comparator.compare(a.values, b.values));
+            Object[] afterKey = query.getAfterKey();
+            if (afterKey != null) {
+                if (afterKey.length != orders.size()) {
+                    throw new IllegalArgumentException("Seek key needs one value per order column.");
+                }
+                Map<String, Object> after = new HashMap<>();
+                for (int i = 0; i < afterKey.length; i++) {
+                    after.put(orders.get(i).column, normalize(metadata.getColumn(orders.get(i).column).toSql(afterKey[i])));
+                }
+                rows = rows.filter(row -> comparator.compare(row.values, after) > 0);
+            }
+        }
+        if (query.getLimit() >= 0) {
+            rows = rows.limit(query.getLimit());
+        }
+        List<String> projection = query.getProjection();
+        return rows.map(row -> toEntity(metadata, row.values, projection));
+    }
+
+    @Override
+    public Stream<Map<String, Object>> streamRaw(String query) {
+        throw rawSqlUnsupported();
+    }
+
+    /**
+     * Rewrites the live records of sealed segments whose dead fraction is above the threshold and
+     * deletes them. Runs periodically in the background, callable directly e.g. after a large delete.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            List<Segment> sealed = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.size > 0) {
+                    sealed.add(segment);
+                }
+            }
+            // Oldest first, compacting it can leave the next one oldest with its tombstones dead
+            sealed.sort(Comparator.comparingInt(segment -> segment.id));
+            for (Segment segment : sealed) {
+                if (!running) {
+                    return;
+                }
+                long dead = segment.deadBytes.get();
+                if (segment.id == Collections.min(segments.keySet())) {
+                    dead += segment.tombstoneBytes.get();
+                }
+                if (dead < segment.size * compactionThreshold) {
+                    continue;
+                }
+                try {
+                    compact(segment);
+                } catch (Exception e) {
+                    ILog.e(TAG, "Compaction of segment " + segment.id + " failed: " + e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        int oldest = Collections.min(segments.keySet());
+        // Tombstones only matter while an older segment may still hold what they delete
+        boolean keepTombstones = segment.id != oldest;
+
+        SegmentScanner scanner = new SegmentScanner(segment);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Write> moves = new ArrayList<>();
+        long moved = 0;
+        while (true) {
+            long offset = scanner.offset();
+            SegmentRecord record = scanner.next();
+            if (record == null) {
+                break;
+            }
+            boolean live;
+            Location previous = null;
+            if (record.type == SegmentRecord.PUT) {
+                previous = tableIndex(record.table).get(record.key);
+                live = previous != null && previous.segment == segment.id && previous.offset == offset;
+            } else if (record.type == SegmentRecord.DELETE) {
+                live = keepTombstones && !tableIndex(record.table).containsKey(record.key);
+            } else {
+                live = keepTombstones;
+            }
+            if (live) {
+                ByteBuffer bytes = scanner.copy();
+                moves.add(new Write(record.type, record.table, record.key, null, bytes, previous));
+                moved += bytes.remaining();
+                if (moves.size() == RELOCATION_CHUNK) {
+                    futures.add(submit(moves, true));
+                    moves = new ArrayList<>();
+                }
+            }
+        }
+        if (!moves.isEmpty()) {
+            futures.add(submit(moves, true));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        // Readers that still hold a location in this segment retry against the index
+        segments.remove(segment.id);
+        segment.close();
+        Files.deleteIfExists(segment.path);
+        Files.deleteIfExists(hintPath(segment.id));
+        ILog.i(TAG, "Compacted segment " + segment.id + ", kept " + moved + " of " + segment.size + " bytes");
+    }
+
+    private <T> Write putWrite(EntityMetadata<T> metadata, T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot insert null object.");
+        }
+        String table = metadata.getTableName();
+        String key;
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        if (primaryKeys.length == 0) {
+            // Recovery continues after the highest row id in the index
+            key = "#" + rowIds.incrementAndGet();
+        } else {
+            assignAutoIncrement(metadata, t);
+            key = keyOf(metadata, t);
+        }
+        return new Write(SegmentRecord.PUT, table, key, SegmentRecord.body(table, key, metadata, t));
+    }
+
+    // A zero or null auto increment key gets the next id, like SQLite's rowid
+    private <T> void assignAutoIncrement(EntityMetadata<T> metadata, T t) {
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        if (primaryKeys.length != 1 || !primaryKeys[0].autoIncrement) {
+            return;
+        }
+        EntityMetadata.Column column = primaryKeys[0];
+        AtomicLong counter = autoIncrements.computeIfAbsent(metadata.getTableName(), table -> new AtomicLong());
+        try {
+            Object value = column.get(t);
+            if (value == null || value instanceof Number && ((Number) value).longValue() == 0) {
+                column.set(t, column.fromSql(counter.incrementAndGet()));
+            } else if (value instanceof Number) {
+                counter.accumulateAndGet(((Number) value).longValue(), Math::max);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot assign id of " + metadata.getTableName() + ".", e);
+        }
+    }
+
+    private <T> CompletableFuture<Void> submitDeleteKey(EntityMetadata<T> metadata, String key) {
+        String table = metadata.getTableName();
+        return submit(Collections.singletonList(new Write(SegmentRecord.DELETE, table, key,
+                SegmentRecord.body(table, key, metadata, null))), false);
+    }
+
+    private static <T> String keyOf(EntityMetadata<T> metadata, T t) {
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        try {
+            if (primaryKeys.length == 1) {
+                return keyOfId(primaryKeys[0].get(t));
+            }
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < primaryKeys.length; i++) {
+                if (i > 0) {
+                    key.append('\u0000');
+                }
+                key.append(keyOfId(primaryKeys[i].toSql(primaryKeys[i].get(t))));
+            }
+            return key.toString();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read key of " + metadata.getTableName() + ".", e);
+        }
+    }
+
+    // Same key for an id whether it is passed as int, long or the stored value
+    private static String keyOfId(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Primary key cannot be null.");
+        }
+        if (id instanceof Boolean) {
+            return (Boolean) id ? "1" : "0";
+        }
+        Object value = normalize(id);
+        return value instanceof Double && (Double) value == Math.rint((Double) value)
+                ? String.valueOf(((Double) value).longValue()) : String.valueOf(value);
+    }
+
+    private CompletableFuture<Void> submit(List<Write> writes, boolean sync) {
+        Batch batch = new Batch(writes, sync);
+        try {
+            // A full queue is waited on in steps, close() stops the writer that would drain it
+            while (running) {
+                if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    // Closed meanwhile, whoever takes it out of the queue first completes it
+                    if (!running && queue.remove(batch)) {
+                        batch.future.completeExceptionally(closedException());
+                    }
+                    return batch.future;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.future.completeExceptionally(e);
+            return batch.future;
+        }
+        batch.future.completeExceptionally(closedException());
+        return batch.future;
+    }
+
+    // Waits for the write and rethrows what failed it
+    private static void write(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw e;
+        }
+    }
+
+    private void failQueued() {
+        Batch batch;
+        while ((batch = queue.poll()) != null) {
+            batch.future.completeExceptionally(closedException());
+        }
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("Segment store is closed.");
+    }
+
+    private void run() {
+        List<Batch> group = new ArrayList<>(MAX_GROUP_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Batch first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Everything queued while the previous group was being synced joins this one
+                group.add(first);
+                queue.drainTo(group, MAX_GROUP_SIZE - 1);
+                append(group);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                group.clear();
+            }
+        }
+        // Fail what was queued after close
+        failQueued();
+    }
+
+    private void append(List<Batch> group) {
+        List<Write> written = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        Set<String> touchedKeys = new HashSet<>();
+        Set<String> clearedTables = new HashSet<>();
+        boolean sync = syncWrites;
+        try {
+            long start = active.size;
+            for (Batch batch : group) {
+                sync |= batch.sync;
+                for (Write write : batch.writes) {
+                    if (write.record == null) {
+                        if (write.type == SegmentRecord.CLEAR) {
+                            clearedTables.add(write.table);
+                        } else {
+                            touchedKeys.add(write.table + '\u0000' + write.key);
+                        }
+                    } else if (write.type == SegmentRecord.PUT && (tableIndex(write.table).get(write.key) != write.previous
+                            || clearedTables.contains(write.table) || touchedKeys.contains(write.table + '\u0000' + write.key))) {
+                        // Replaced since compaction read it, copying it would put an old value after a newer write
+                        continue;
+                    }
+                    int size = write.size();
+                    if (start + buffer.position() > 0 && start + buffer.position() + size > maxSegmentSize) {
+                        flush(written, locations, sync);
+                        roll();
+                        start = active.size;
+                    }
+                    if (buffer.remaining() < size) {
+                        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                    long offset = start + buffer.position();
+                    long recordSequence;
+                    if (write.record != null) {
+                        recordSequence = write.record.getLong(8);
+                        buffer.put(write.record.duplicate());
+                    } else {
+                        recordSequence = ++sequence;
+                        SegmentRecord.write(buffer, recordSequence, write.type, write.body);
+                    }
+                    written.add(write);
+                    locations.add(new Location(active.id, offset, size, recordSequence));
+                }
+            }
+            flush(written, locations, sync);
+            for (Batch batch : group) {
+                batch.future.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            ILog.e(TAG, "Append of " + group.size() + " write groups failed: " + e.getMessage());
+            buffer.clear();
+            written.clear();
+            locations.clear();
+            for (Batch batch : group) {
+                batch.future.completeExceptionally(e);
+            }
+        }
+        if (buffer.capacity() > 16 * 1024 * 1024) {
+            buffer = ByteBuffer.allocate(64 * 1024);
+        }
+    }
+
+    // Writes the buffered records, syncs, then makes them visible in the index
+    private void flush(List<Write> written, List<Location> locations, boolean sync) throws IOException {
+        long start = active.size;
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                active.channel.write(buffer, start + (buffer.position()));
+            }
+            if (sync) {
+                active.channel.force(false);
+            }
+        } catch (IOException e) {
+            // Cut off a partial append, a torn record would hide every later one on replay
+            try {
+                active.channel.truncate(start);
+            } catch (IOException ignored) {
+                // Replay stops at the torn record
+            }
+            throw e;
+        } finally {
+            buffer.clear();
+        }
+        active.size = start + locationsBytes(locations);
+
+        for (int i = 0; i < written.size(); i++) {
+            apply(written.get(i), locations.get(i));
+        }
+        written.clear();
+        locations.clear();
+    }
+
+    private static long locationsBytes(List<Location> locations) {
+        long bytes = 0;
+        for (Location location : locations) {
+            bytes += location.length;
+        }
+        return bytes;
+    }
+
+    private void apply(Write write, Location location) {
+        activeHints.add(new HintEntry(write.type, location.sequence, write.table, write.key,
+                location.segment, location.offset, location.length));
+        ConcurrentHashMap<String, Location> table = tableIndex(write.table);
+        if (write.record != null) {
+            // Moved by compaction, the index only follows a record that is still the latest
+            if (write.type != SegmentRecord.PUT) {
+                markTombstone(location);
+            } else if (!table.replace(write.key, write.previous, location)) {
+                markDead(location);
+            } else {
+                markDead(write.previous);
+            }
+        } else if (write.type == SegmentRecord.PUT) {
+            Location old = table.put(write.key, location);
+            if (old != null) {
+                markDead(old);
+            }
+        } else if (write.type == SegmentRecord.DELETE) {
+            Location old = table.remove(write.key);
+            if (old != null) {
+                markDead(old);
+            }
+            markTombstone(location);
+        } else {
+            for (Location old : table.values()) {
+                markDead(old);
+            }
+            table.clear();
+            markTombstone(location);
+        }
+    }
+
+    private void markDead(Location location) {
+        Segment segment = segments.get(location.segment);
+        if (segment != null) {
+            segment.deadBytes.addAndGet(location.length);
+        }
+    }
+
+    private void markTombstone(Location location) {
+        Segment segment = segments.get(location.segment);
+        if (segment != null) {
+            segment.tombstoneBytes.addAndGet(location.length);
+        }
+    }
+
+    // Seals the active segment with a hint file and starts the next one
+    private void roll() throws IOException {
+        active.channel.force(false);
+        writeHints(active.id, activeHints);
+        activeHints.clear();
+        active = openSegment(active.id + 1);
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.size());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Path hintPath(int id) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, HINT_SUFFIX));
+    }
+
+    private void writeHints(int id, List<HintEntry> hints) throws IOException {
+        Path path = hintPath(id);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedOutputStream file = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(hints.size());
+            for (HintEntry hint : hints) {
+                out.writeByte(hint.type);
+                out.writeLong(hint.sequence);
+                writeString(out, hint.table);
+                writeString(out, hint.key);
+                out.writeLong(hint.offset);
+                out.writeInt(hint.length);
+            }
+            out.flush();
+            // Trailer outside the checksum
+            new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+        }
+        DaoFile.move(temp, path);
+    }
+
+    // Null when the hint file is missing or damaged, the segment is scanned instead
+    private List<HintEntry> readHints(int id) {
+        Path path = hintPath(id);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (BufferedInputStream file = new BufferedInputStream(Files.newInputStream(path))) {
+            CheckedInputStream checked = new CheckedInputStream(file, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            int count = in.readInt();
+            List<HintEntry> hints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                long recordSequence = in.readLong();
+                String table = readString(in);
+                String key = readString(in);
+                hints.add(new HintEntry(type, recordSequence, table, key, id, in.readLong(), in.readInt()));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(file).readLong() != expected) {
+                return null;
+            }
+            return hints;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<HintEntry> scan(Segment segment, boolean last) throws IOException {
+        List<HintEntry> entries = new ArrayList<>();
+        if (segment.size == 0) {
+            return entries;
+        }
+        SegmentScanner scanner = new SegmentScanner(segment);
+        while (true) {
+            long offset = scanner.offset();
+            SegmentRecord record = scanner.next();
+            if (record == null && offset == segment.size) {
+                break;
+            }
+            if (record == null) {
+                if (last) {
+                    // Torn tail of an append interrupted by a crash
+                    ILog.w(TAG, "Truncating segment " + segment.id + " at " + offset + " of " + segment.size);
+                    segment.channel.truncate(offset);
+                    segment.size = offset;
+                } else {
+                    ILog.e(TAG, "Corrupt record in segment " + segment.id + " at " + offset + ", skipping the rest");
+                }
+                break;
+            }
+            entries.add(new HintEntry(record.type, record.sequence, record.table, record.key, segment.id, offset,
+                    (int) (scanner.offset() - offset)));
+        }
+        return entries;
+    }
+
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(ids);
+
+        // Newest record per key across all segments, compaction can move old records past newer ones
+        Map<String, Map<String, HintEntry>> latest = new HashMap<>();
+        Map<String, HintEntry> clears = new HashMap<>();
+        List<HintEntry> lastEntries = null;
+        boolean lastSealed = true;
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            boolean last = i == ids.size() - 1;
+            Segment segment = openSegment(id);
+            List<HintEntry> entries = readHints(id);
+            if (entries == null) {
+                entries = scan(segment, last);
+                if (last) {
+                    lastSealed = false;
+                }
+            }
+            if (last) {
+                lastEntries = entries;
+            }
+            for (HintEntry entry : entries) {
+                sequence = Math.max(sequence, entry.sequence);
+                if (entry.type == SegmentRecord.CLEAR) {
+                    clears.merge(entry.table, entry, (a, b) -> a.sequence >= b.sequence ? a : b);
+                } else {
+                    Map<String, HintEntry> table = latest.computeIfAbsent(entry.table, t -> new HashMap<>());
+                    HintEntry current = table.get(entry.key);
+                    if (current == null || current.sequence < entry.sequence) {
+                        table.put(entry.key, entry);
+                    }
+                }
+            }
+        }
+
+        // Latest tombstones are counted apart from dead bytes, as while the store runs
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        Map<Integer, Long> tombstoneBytes = new HashMap<>();
+        for (HintEntry clear : clears.values()) {
+            tombstoneBytes.merge(clear.segment, (long) clear.length, Long::sum);
+        }
+        for (Map.Entry<String, Map<String, HintEntry>> table : latest.entrySet()) {
+            HintEntry clear = clears.get(table.getKey());
+            long cleared = clear != null ? clear.sequence : -1L;
+            ConcurrentHashMap<String, Location> tableIndex = tableIndex(table.getKey());
+            for (HintEntry entry : table.getValue().values()) {
+                if (entry.sequence <= cleared) {
+                    continue;
+                }
+                if (entry.type == SegmentRecord.PUT) {
+                    tableIndex.put(entry.key, new Location(entry.segment, entry.offset, entry.length, entry.sequence));
+                    liveBytes.merge(entry.segment, (long) entry.length, Long::sum);
+                } else {
+                    tombstoneBytes.merge(entry.segment, (long) entry.length, Long::sum);
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            long tombstones = tombstoneBytes.getOrDefault(segment.id, 0L);
+            segment.tombstoneBytes.set(tombstones);
+            segment.deadBytes.set(segment.size - liveBytes.getOrDefault(segment.id, 0L) - tombstones);
+        }
+        // Not from the sequence, row ids of writes that never got appended are used up as well
+        long maxRowId = 0;
+        for (ConcurrentHashMap<String, Location> tableIndex : index.values()) {
+            for (String key : tableIndex.keySet()) {
+                if (key.startsWith("#")) {
+                    try {
+                        maxRowId = Math.max(maxRowId, Long.parseLong(key.substring(1)));
+                    } catch (NumberFormatException e) {
+                        // Not generated by us
+                    }
+                }
+            }
+        }
+        rowIds.set(maxRowId);
+
+        if (!ids.isEmpty() && !lastSealed) {
+            active = segments.get(ids.get(ids.size() - 1));
+            activeHints.addAll(lastEntries);
+        } else {
+            active = openSegment(ids.isEmpty() ? 1 : ids.get(ids.size() - 1) + 1);
+        }
+        ILog.i(TAG, "Recovered " + segments.size() + " segments up to sequence " + sequence);
+    }
+
+    private ConcurrentHashMap<String, Location> tableIndex(String table) {
+        return index.computeIfAbsent(table, t -> new ConcurrentHashMap<>());
+    }
+
+    private Row readRow(String table, String key) throws IOException {
+        ConcurrentHashMap<String, Location> tableIndex = tableIndex(table);
+        while (true) {
+            Location location = tableIndex.get(key);
+            if (location == null) {
+                return null;
+            }
+            Row row = read(key, location);
+            if (row != null) {
+                return row;
+            }
+            if (tableIndex.get(key) == location) {
+                throw new IOException("Cannot read " + table + " " + key + ".");
+            }
+        }
+    }
+
+    // Null when the segment was compacted away meanwhile, the caller looks the key up again
+    private Row read(String key, Location location) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(location.length);
+        Segment segment;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                segment = segments.get(location.segment);
+                if (segment == null) {
+                    return null;
+                }
+                try {
+                    readFully(segment, segment.readChannel(), bytes, location.offset);
+                    break;
+                } catch (ClosedByInterruptException e) {
+                    // Our interrupt closed the read channel, read again and keep the interrupt for the caller
+                    interrupted |= Thread.interrupted();
+                } catch (ClosedChannelException e) {
+                    if (segments.get(location.segment) != segment) {
+                        return null;
+                    }
+                    if (segment.isClosed()) {
+                        throw new IOException("Segment store is closed.", e);
+                    }
+                    // Closed under us by another reader's interrupt
+                }
+                bytes.clear();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        bytes.flip();
+        SegmentRecord record = SegmentRecord.read(bytes);
+        if (record == null) {
+            throw new IOException("Corrupt record in segment " + segment.id + " at " + location.offset + ".");
+        }
+        return new Row(key, record.values());
+    }
+
+    // Fills the rest of the buffer from the segment starting at the given file position
+    private static void readFully(Segment segment, FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        int start = bytes.position();
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position() - start) < 0) {
+                throw new IOException("Unexpected end of segment " + segment.id + ".");
+            }
+        }
+    }
+
+    // Live rows of a table in write order, read lazily
+    private Stream<Row> rows(String table) {
+        List<Map.Entry<String, Location>> snapshot = new ArrayList<>(tableIndex(table).entrySet());
+        snapshot.sort(Comparator.comparingLong(entry -> entry.getValue().sequence));
+        return snapshot.stream()
+                .map(entry -> {
+                    try {
+                        Row row = read(entry.getKey(), entry.getValue());
+                        // Moved by compaction since the snapshot
+                        return row != null ? row : readRow(table, entry.getKey());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .filter(row -> row != null);
+    }
+
+    private <T> Stream<T> entities(EntityMetadata<T> metadata, Predicate<Row> filter) {
+        return rows(metadata.getTableName()).filter(filter).map(row -> toEntity(metadata, row.values, Collections.emptyList()));
+    }
+
+    private static <T> T toEntity(EntityMetadata<T> metadata, Map<String, Object> values, List<String> projection) {
+        try {
+            T instance = metadata.newInstance();
+            for (EntityMetadata.Column column : metadata.getColumns()) {
+                if (!projection.isEmpty() && !projection.contains(column.name)) {
+                    continue;
+                }
+                if (values.containsKey(column.name)) {
+                    column.set(instance, column.fromSql(values.get(column.name)));
+                }
+            }
+            return instance;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + metadata.getTableName() + " instance.", e);
+        }
+    }
+
+    private static void checkColumn(EntityMetadata<?> metadata, String column) {
+        if (column == null || metadata.getColumn(column) == null) {
+            throw new IllegalArgumentException("Unknown column " + column + " for " + metadata.getTableName() + ".");
+        }
+    }
+
+    private static Predicate<Row> compile(EntityMetadata<?> metadata, Query.Predicate predicate) {
+        EntityMetadata.Column column = metadata.getColumn(predicate.column);
+        Object[] values = new Object[predicate.values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = normalize(column.toSql(predicate.values[i]));
+        }
+        String name = predicate.column;
+        switch (predicate.operator) {
+            case EQ:
+                return row -> compareNullable(row.values.get(name), values[0]) == 0;
+            case NE:
+                return row -> row.values.get(name) != null && compareNullable(row.values.get(name), values[0]) != 0;
+            case LT:
+                return row -> row.values.get(name) != null && compareValues(row.values.get(name), values[0]) < 0;
+            case LE:
+                return row -> row.values.get(name) != null && compareValues(row.values.get(name), values[0]) <= 0;
+            case GT:
+                return row -> row.values.get(name) != null && compareValues(row.values.get(name), values[0]) > 0;
+            case GE:
+                return row -> row.values.get(name) != null && compareValues(row.values.get(name), values[0]) >= 0;
+            case LIKE: {
+                Pattern pattern = likePattern(String.valueOf(values[0]));
+                return row -> row.values.get(name) != null && pattern.matcher(String.valueOf(row.values.get(name))).matches();
+            }
+            case IN:
+                return row -> {
+                    Object value = row.values.get(name);
+                    for (Object candidate : values) {
+                        if (compareNullable(value, candidate) == 0) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + predicate.operator + ".");
+        }
+    }
+
+    // SQL LIKE: % any run, _ one character, ASCII case-insensitive as in SQLite
+    private static Pattern likePattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : like.toCharArray()) {
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    private static int compareOrder(List<Query.Order> orders, Map<String, Object> a, Map<String, Object> b) {
+        for (Query.Order order : orders) {
+            Object left = a.get(order.column);
+            Object right = b.get(order.column);
+            // Nulls sort first, as in SQLite
+            int result = left == null ? (right == null ? 0 : -1) : right == null ? 1 : compareValues(left, right);
+            if (result != 0) {
+                return order.descending ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    // -1 for a null against a value, so null never equals anything
+    private static int compareNullable(Object a, Object b) {
+        if (a == null || b == null) {
+            return -1;
+        }
+        return compareValues(a, b);
+    }
+
+    // Numbers before text before blobs, as SQLite orders storage classes
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            if (a instanceof Long && b instanceof Long) {
+                return Long.compare((Long) a, (Long) b);
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        int rankA = rank(a);
+        int rankB = rank(b);
+        if (rankA != rankB) {
+            return Integer.compare(rankA, rankB);
+        }
+        if (a instanceof byte[]) {
+            return Arrays.compare((byte[]) a, (byte[]) b);
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private static int rank(Object value) {
+        return value instanceof Number ? 0 : value instanceof byte[] ? 2 : 1;
+    }
+
+    // Stored form of a value: whole numbers as Long, decimals as Double
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Character) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    // String comparison of query(column, value), numeric columns match the parsed number
+    private static boolean matchesText(Object value, String text) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Number) {
+            try {
+                return compareValues(value, Double.parseDouble(text)) == 0;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        if (value instanceof byte[]) {
+            return false;
+        }
+        return value.toString().equals(text);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> classOf(T t) {
+        return (Class<T>) t.getClass();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(Class<T> clazz, int length) {
+        return (T[]) Array.newInstance(clazz, length);
+    }
+
+    private static UnsupportedOperationException rawSqlUnsupported() {
+        return new UnsupportedOperationException("Raw SQL is not supported by the segment store, use Query.");
+    }
+}
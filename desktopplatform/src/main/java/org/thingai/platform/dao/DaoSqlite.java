@@ -2,121 +2,175 @@ package org.thingai.platform.dao;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.thingai.base.dao.AsyncDao;
+import org.thingai.base.dao.BatchInsertException;
 import org.thingai.base.dao.Dao;
-import org.thingai.base.dao.annotations.DaoColumn;
-import org.thingai.base.dao.annotations.DaoTable;
+import org.thingai.base.dao.EntityMetadata;
+import org.thingai.base.dao.Query;
+import org.thingai.base.dao.RowMapper;
+import org.thingai.base.dao.RowMappers;
 import org.thingai.base.log.ILog;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.sql.Connection;
-import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class DaoSqlite implements Dao {
     private static final String TAG = "DaoSqlite";
-    private final HikariDataSource dataSource;
+    private static final int SQLITE_OPEN_READONLY = 0x00000001;
+
+    static class CompiledQuery {
+        final String sql;
+        final int[] ordinals;
+
+        CompiledQuery(String sql, int[] ordinals) {
+            this.sql = sql;
+            this.ordinals = ordinals;
+        }
+    }
+
+    // Same instance unless the profile splits reads from writes
+    private final HikariDataSource writeDataSource;
+    private final HikariDataSource readDataSource;
     private final String dbPath;
+    private int batchSize = 1000;
+    private int fetchSize = 500;
+    private final Map<String, CompiledQuery> compiledQueries = new ConcurrentHashMap<>();
+    private volatile GroupCommitWriter groupCommitWriter;
+    private volatile boolean explainQueryPlan;
+    private final Set<String> explainedQueries = ConcurrentHashMap.newKeySet();
 
     public DaoSqlite(String dbPath) {
+        this(dbPath, SqliteProfile.defaults());
+    }
+
+    public DaoSqlite(String dbPath, SqliteProfile profile) {
         this.dbPath = dbPath;
+        // An in-memory database is private to its connection, it cannot be split
+        boolean split = profile.isSplitReadWrite() && !dbPath.isEmpty() && !dbPath.startsWith(":memory:");
+        if (split) {
+            // Writer first, it switches the journal mode before any reader opens the file
+            this.writeDataSource = new HikariDataSource(createConfig(profile, "writer", 1, false));
+            this.readDataSource = new HikariDataSource(createConfig(profile, "reader", profile.getReadPoolSize(), true));
+        } else {
+            this.writeDataSource = new HikariDataSource(createConfig(profile, "pool", profile.getPoolSize(), false));
+            this.readDataSource = writeDataSource;
+        }
+    }
+
+    private HikariConfig createConfig(SqliteProfile profile, String poolName, int poolSize, boolean readOnly) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl("jdbc:sqlite:" + dbPath);
         config.setDriverClassName("org.sqlite.JDBC");
-        config.setMaximumPoolSize(10);
+        config.setPoolName(TAG + "-" + poolName);
+        config.setMaximumPoolSize(poolSize);
         config.setConnectionTimeout(30000);
         config.setIdleTimeout(600000);
         config.setMaxLifetime(1800000);
-        this.dataSource = new HikariDataSource(config);
+
+        // sqlite-jdbc applies these pragmas on every new connection
+        if (readOnly) {
+            // Hikari sets the flag on every connection, sqlite-jdbc only accepts the mode it was opened with
+            config.setReadOnly(true);
+            config.addDataSourceProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        } else if (profile.getJournalMode() != null) {
+            config.addDataSourceProperty("journal_mode", profile.getJournalMode());
+        }
+        if (profile.getSynchronous() != null) {
+            config.addDataSourceProperty("synchronous", profile.getSynchronous());
+        }
+        if (profile.getMmapSize() > 0) {
+            config.addDataSourceProperty("mmap_size", String.valueOf(profile.getMmapSize()));
+        }
+        if (profile.getCacheSize() != null) {
+            config.addDataSourceProperty("cache_size", String.valueOf(profile.getCacheSize()));
+        }
+        if (profile.getTempStore() != null) {
+            config.addDataSourceProperty("temp_store", profile.getTempStore());
+        }
+        if (profile.getBusyTimeout() > 0) {
+            config.addDataSourceProperty("busy_timeout", String.valueOf(profile.getBusyTimeout()));
+        }
+        return config;
     }
 
     public void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+        if (groupCommitWriter != null) {
+            groupCommitWriter.close();
+        }
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
+        if (writeDataSource != null && !writeDataSource.isClosed()) {
+            writeDataSource.close();
         }
     }
 
-    protected static Field[] getAllFields(Class clazz) {
-        List<Field> fields = new ArrayList<>();
-        while (clazz != null) {
-            fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
-            clazz = clazz.getSuperclass();
+    // Connections available to concurrent callers, reads and writes together
+    public int getMaxConnections() {
+        if (readDataSource == writeDataSource) {
+            return writeDataSource.getMaximumPoolSize();
         }
+        return readDataSource.getMaximumPoolSize() + writeDataSource.getMaximumPoolSize();
+    }
 
-        // Filter out fields that are not annotated with DaoColumn
-        fields.removeIf(field -> !field.isAnnotationPresent(DaoColumn.class));
+    // Asynchronous facade limited to the pool size, close it when done
+    public AsyncDao newAsyncDao() {
+        return new AsyncDao(this, getMaxConnections());
+    }
 
-        return fields.toArray(new Field[0]);
+    public int getBatchSize() {
+        return batchSize;
     }
 
-    @Override
-    public void initDao(Class[] classes) {
-        ILog.d(TAG, "Initializing SQLite DAO with database at: ", dbPath);
-        for (Class clazz : classes) {
-            DaoTable daoTable = (DaoTable) clazz.getAnnotation(DaoTable.class);
-            String query = "CREATE TABLE IF NOT EXISTS ";
-            if (daoTable != null) {
-                query += daoTable.name();
-            } else {
-                query += clazz.getSimpleName();
-            }
-            query += " (";
-
-            Field[] fields = getAllFields(clazz);
-            for (Field field : fields) {
-                DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-                if (daoColumn != null) {
-                    if (daoColumn.name().isEmpty()) {
-                        query += field.getName() + " ";
-                    } else {
-                        query += daoColumn.name() + " ";
-                    }
+    // Number of rows written and committed together by insertBatch
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
 
-                    // column type
-                    if (field.getType() == String.class) {
-                        query += "TEXT";
-                    } else if (field.getType() == int.class || field.getType() == Integer.class) {
-                        query += "INTEGER";
-                    } else if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-                        query += "INTEGER";
-                    } else if (field.getType() == double.class || field.getType() == Double.class) {
-                        query += "REAL";
-                    } else {
-                        query += "BLOB";
-                    }
+    public int getFetchSize() {
+        return fetchSize;
+    }
 
-                    // constrains
-                    if (daoColumn.primaryKey()) {
-                        query += " PRIMARY KEY";
-                    }
-                    if (!daoColumn.nullable()) {
-                        query += " NOT NULL";
-                    }
-                    if (daoColumn.unique()) {
-                        query += " UNIQUE";
-                    }
-                    if (daoColumn.autoIncrement()) {
-                        query += " AUTOINCREMENT";
-                    }
-                    if (!daoColumn.defaultValue().isEmpty()) {
-                        query += " DEFAULT " + daoColumn.defaultValue() + " ";
-                    }
-                }
-                query += ", ";
-            }
+    // Rows fetched per round trip by the stream methods
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Fetch size must be positive.");
+        }
+        this.fetchSize = fetchSize;
+    }
 
-            // Remove trailing comma and space
-            if (query.endsWith(", ")) {
-                query = query.substring(0, query.length() - 2);
-            }
-            query += ");";
+    protected static Field[] getAllFields(Class<?> clazz) {
+        return EntityMetadata.getAllFields(clazz);
+    }
+
+    @Override
+    public void initDao(Class<?>[] classes) {
+        ILog.d(TAG, "Initializing SQLite DAO with database at: ", dbPath);
+        for (Class<?> clazz : classes) {
+            EntityMetadata<?> metadata = EntityMetadata.of(clazz);
+            String query = metadata.getCreateTableSql();
             ILog.d(TAG, "Executing query: ", query);
 
-            // execute query
-            try (Connection connection = dataSource.getConnection()) {
+            // execute query, indexes use IF NOT EXISTS so only missing ones are created
+            try (Connection connection = writeDataSource.getConnection()) {
                 if (connection != null && !connection.isClosed()) {
                     var statement = connection.createStatement();
                     statement.executeUpdate(query);
+                    for (String indexQuery : metadata.getCreateIndexSql()) {
+                        ILog.d(TAG, "Executing query: ", indexQuery);
+                        statement.executeUpdate(indexQuery);
+                    }
                 } else {
                     throw new IllegalStateException("Database connection is not established.");
                 }
@@ -129,134 +183,100 @@ public class DaoSqlite implements Dao {
 
     @Override
     public <T> void insertOrUpdate(T t) {
-        Class<?> clazz = t.getClass();
         if (t == null) {
             throw new IllegalArgumentException("Cannot insert null object.");
         }
-        String query = "INSERT OR REPLACE INTO " + clazz.getAnnotation(DaoTable.class).name() + " (";
-        StringBuilder columns = new StringBuilder();
-        StringBuilder placeholders = new StringBuilder();
-
-        Field[] fields = getAllFields(clazz);
-        for (Field field : fields) {
-            DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-            if (daoColumn != null) {
-                columns.append(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name()).append(", ");
-                placeholders.append("?, ");
-            }
-        }
-
-        // Remove trailing comma and space
-        if (columns.length() > 0) {
-            columns.setLength(columns.length() - 2);
-            placeholders.setLength(placeholders.length() - 2);
-        }
-
-        query += columns + ") VALUES (" + placeholders + ");";
-
-        try (Connection connection = dataSource.getConnection()) {
-            var preparedStatement = connection.prepareStatement(query);
-            int index = 1;
-            for (Field field : fields) {
-                DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-                if (daoColumn != null) {
-                    field.setAccessible(true);
-                    if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-                        Boolean boolValue = (Boolean) field.get(t);
-                        preparedStatement.setObject(index++, boolValue != null && boolValue ? 1 : 0);
-                        continue;
-                    }
-                    Object value = field.get(t);
-                    preparedStatement.setObject(index++, value);
-                }
-            }
-            ILog.d(TAG, "Executing query: ", preparedStatement.toString());
-
-            preparedStatement.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        insertOrUpdate(classOf(t), t);
     }
 
     @Override
     public <T> void insertOrUpdate(Class<T> clazz, T t) {
-        if (t == null) {
-            throw new IllegalArgumentException("Cannot insert null object.");
-        }
-        String query = "INSERT OR REPLACE INTO " + clazz.getAnnotation(DaoTable.class).name() + " (";
-        StringBuilder columns = new StringBuilder();
-        StringBuilder placeholders = new StringBuilder();
+        write(insertMutation(clazz, t));
+    }
 
-        Field[] fields = getAllFields(clazz);
-        for (Field field : fields) {
-            DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-            if (daoColumn != null) {
-                columns.append(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name()).append(", ");
-                placeholders.append("?, ");
-            }
-        }
+    @Override
+    public <T> void insertBatch(T[] t) {
+        insertBatch(Arrays.asList(t));
+    }
 
-        // Remove trailing comma and space
-        if (columns.length() > 0) {
-            columns.setLength(columns.length() - 2);
-            placeholders.setLength(placeholders.length() - 2);
+    @Override
+    public <T> void insertBatch(Iterable<T> items) {
+        if (items == null) {
+            throw new IllegalArgumentException("Cannot insert null batch.");
         }
 
-        query += columns + ") VALUES (" + placeholders + ");";
-
-        try (Connection connection = dataSource.getConnection()) {
-            var preparedStatement = connection.prepareStatement(query);
-            int index = 1;
-            for (Field field : fields) {
-                DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-                if (daoColumn != null) {
-                    field.setAccessible(true);
-                    Object value = field.get(t);
-                    preparedStatement.setObject(index++, value);
+        int chunkIndex = 0;
+        long committedRows = 0;
+        try (Connection connection = writeDataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            Class<?> currentClass = null;
+            RowMapper<T> mapper = null;
+            PreparedStatement preparedStatement = null;
+            long rows = 0;
+            int chunkRows = 0;
+            try {
+                for (T item : items) {
+                    if (item == null) {
+                        throw new IllegalArgumentException("Cannot insert null object.");
+                    }
+                    // One statement per entity class, switching flushes the pending rows
+                    if (item.getClass() != currentClass) {
+                        if (preparedStatement != null) {
+                            preparedStatement.executeBatch();
+                            preparedStatement.close();
+                        }
+                        currentClass = item.getClass();
+                        mapper = RowMappers.of(classOf(item));
+                        preparedStatement = connection.prepareStatement(mapper.getMetadata().getInsertOrReplaceSql());
+                    }
+                    mapper.bind(preparedStatement, item);
+                    preparedStatement.addBatch();
+                    rows++;
+
+                    if (++chunkRows == batchSize) {
+                        preparedStatement.executeBatch();
+                        connection.commit();
+                        committedRows = rows;
+                        chunkIndex++;
+                        chunkRows = 0;
+                    }
+                }
+                if (chunkRows > 0) {
+                    preparedStatement.executeBatch();
+                    connection.commit();
+                }
+                ILog.d(TAG, "Inserted batch of " + rows + " rows.");
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                if (preparedStatement != null) {
+                    preparedStatement.close();
                 }
+                connection.setAutoCommit(autoCommit);
             }
-            ILog.d(TAG, "Executing query: ", preparedStatement.toString());
-
-            preparedStatement.executeUpdate();
         } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    @Override
-    public <T> void insertBatch(T[] t) {
-        for (T item : t) {
-            insertOrUpdate(item);
+            ILog.e(TAG, "Batch insert failed in chunk " + chunkIndex + ": " + e.getMessage());
+            throw new BatchInsertException(chunkIndex, committedRows, e);
         }
     }
 
     @Override
     public <T> T[] readAll(Class<T> clazz) {
-        String query = "SELECT * FROM " + clazz.getAnnotation(DaoTable.class).name() + ";";
-        ILog.d(TAG, "Executing query: " + query);
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        String query = mapper.getMetadata().getSelectAllSql();
+        ILog.d(TAG, "Executing query: ", query);
         List<T> results = new ArrayList<>();
-        try (Connection connection = dataSource.getConnection()) {
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
             var resultSet = preparedStatement.executeQuery();
             while (resultSet.next()) {
-                T instance = clazz.getDeclaredConstructor().newInstance();
-                Field[] fields = getAllFields(clazz);
-                for (Field field : fields) {
-                    DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-                    if (daoColumn != null) {
-                        field.setAccessible(true);
-                        if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-                            int intValue = resultSet.getInt(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name());
-                            field.set(instance, intValue != 0);
-                            continue;
-                        }
-                        field.set(instance, resultSet.getObject(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name()));
-                    }
-                }
-                results.add(instance);
+                results.add(mapper.map(resultSet, mapper.getMetadata().getSelectOrdinals()));
             }
 
-            T[] array = (T[]) Array.newInstance(clazz, results.size());
+            T[] array = newArray(clazz, results.size());
             return results.toArray(array);
         } catch (Exception e) {
             e.printStackTrace();
@@ -266,76 +286,144 @@ public class DaoSqlite implements Dao {
 
     @Override
     public <T, K> void delete(Class<T> clazz, K id) {
-        if (id == null) {
-            throw new IllegalArgumentException("Cannot delete with null id.");
-        }
+        write(deleteMutation(clazz, id));
+    }
 
-        String query = "DELETE FROM " + clazz.getAnnotation(DaoTable.class).name() + " WHERE id = ?;";
-        try (Connection connection = dataSource.getConnection()) {
+    @Override
+    public <T> void delete(T t) {
+        write(deleteMutation(t));
+    }
+
+    @Override
+    public <T> void deleteByColumn(Class<T> clazz, String column, String value) {
+        String query = EntityMetadata.of(clazz).getDeleteByColumnSql(column);
+        explain(query, value);
+        write(connection -> {
             var preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setObject(1, id);
+            preparedStatement.setObject(1, value);
             preparedStatement.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        });
     }
 
     @Override
-    public <T> void delete(T t) {
-        String query = "DELETE FROM " + t.getClass().getAnnotation(DaoTable.class).name();
-        String whereClause = " WHERE ";
-        Field[] fields = getAllFields(t.getClass());
-        List<Object> values = new ArrayList<>();
-        for (Field field : fields) {
-            DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-            if (daoColumn != null && daoColumn.primaryKey()) {
-                whereClause += (daoColumn.name().isEmpty() ? field.getName() : daoColumn.name()) + " = ? AND ";
-                field.setAccessible(true);
-                try {
-                    values.add(field.get(t));
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-            }
+    public <T> void deleteAll(Class<T> clazz) {
+        String query = EntityMetadata.of(clazz).getDeleteAllSql();
+        write(connection -> {
+            var preparedStatement = connection.prepareStatement(query);
+            preparedStatement.executeUpdate();
+        });
+    }
+
+    // Queue mutations to a single writer thread that commits them in groups
+    public synchronized void enableGroupCommit(int queueCapacity, int maxBatchSize, long maxDelayMillis) {
+        if (groupCommitWriter != null) {
+            throw new IllegalStateException("Group commit is already enabled.");
+        }
+        groupCommitWriter = new GroupCommitWriter(writeDataSource, queueCapacity, maxBatchSize, maxDelayMillis);
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return groupCommitWriter != null;
+    }
 
+    public <T> CompletableFuture<Void> submitInsertOrUpdate(T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot insert null object.");
         }
-        // Remove trailing " AND "
-        if (whereClause.endsWith(" AND ")) {
-            whereClause = whereClause.substring(0, whereClause.length() - 5);
+        return submit(insertMutation(classOf(t), t));
+    }
+
+    public <T> CompletableFuture<Void> submitDelete(T t) {
+        return submit(deleteMutation(t));
+    }
+
+    public <T, K> CompletableFuture<Void> submitDelete(Class<T> clazz, K id) {
+        return submit(deleteMutation(clazz, id));
+    }
+
+    private <T> GroupCommitWriter.Mutation insertMutation(Class<T> clazz, T t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Cannot insert null object.");
         }
-        query += whereClause + ";";
-        try (Connection connection = dataSource.getConnection()) {
-            var preparedStatement = connection.prepareStatement(query);
-            for (int i = 0; i < values.size(); i++) {
-                preparedStatement.setObject(i + 1, values.get(i));
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        return connection -> {
+            var preparedStatement = connection.prepareStatement(mapper.getMetadata().getInsertOrReplaceSql());
+            mapper.bind(preparedStatement, t);
+            if (ILog.isLoggable(ILog.DEBUG)) {
+                ILog.d(TAG, "Executing query: ", preparedStatement.toString());
             }
+
             preparedStatement.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        };
     }
 
-    @Override
-    public <T> void deleteByColumn(Class<T> clazz, String column, String value) {
-        String query = "DELETE FROM " + clazz.getAnnotation(DaoTable.class).name() + " WHERE " + column + " = ?;";
-        try (Connection connection = dataSource.getConnection()) {
+    private <T, K> GroupCommitWriter.Mutation deleteMutation(Class<T> clazz, K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot delete with null id.");
+        }
+        String query = EntityMetadata.of(clazz).getDeleteByIdSql();
+        return connection -> {
             var preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setObject(1, value);
+            preparedStatement.setObject(1, id);
             preparedStatement.executeUpdate();
+        };
+    }
+
+    private <T> GroupCommitWriter.Mutation deleteMutation(T t) {
+        RowMapper<T> mapper = RowMappers.of(classOf(t));
+        EntityMetadata<T> metadata = mapper.getMetadata();
+        if (metadata.getPrimaryKeys().length == 0) {
+            throw new IllegalArgumentException("Cannot delete " + metadata.getTableName() + " without primary key.");
+        }
+        return connection -> {
+            var preparedStatement = connection.prepareStatement(metadata.getDeleteByPrimaryKeySql());
+            mapper.bindPrimaryKey(preparedStatement, 1, t);
+            preparedStatement.executeUpdate();
+        };
+    }
+
+    // Runs the mutation now, or hands it to the group commit writer and waits for its commit
+    private void write(GroupCommitWriter.Mutation mutation) {
+        try {
+            submit(mutation).join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private CompletableFuture<Void> submit(GroupCommitWriter.Mutation mutation) {
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            return writer.submit(mutation);
+        }
+        try (Connection connection = writeDataSource.getConnection()) {
+            mutation.apply(connection);
+            return CompletableFuture.completedFuture(null);
         } catch (Exception e) {
-            e.printStackTrace();
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     @Override
-    public <T> void deleteAll(Class<T> clazz) {
-        String query = "DELETE FROM " + clazz.getAnnotation(DaoTable.class).name() + ";";
-        try (Connection connection = dataSource.getConnection()) {
+    public <T, K> T findById(Class<T> clazz, K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot find with null id.");
+        }
+
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        String query = mapper.getMetadata().getSelectByIdSql();
+        explain(query, id);
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
-            preparedStatement.executeUpdate();
+            preparedStatement.setObject(1, id);
+            var resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                return mapper.map(resultSet, mapper.getMetadata().getSelectOrdinals());
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return null;
     }
 
     @Override
@@ -344,22 +432,24 @@ public class DaoSqlite implements Dao {
             throw new IllegalArgumentException("Cannot read with null column or value.");
         }
 
-        String query = "SELECT * FROM " + clazz.getAnnotation(DaoTable.class).name() + " WHERE " + column + " = ?;";
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        String query = mapper.getMetadata().getSelectByColumnSql(column);
+        explain(query, value);
         List<T> results = new ArrayList<>();
-        try (Connection connection = dataSource.getConnection()) {
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
             preparedStatement.setObject(1, value);
             var resultSet = preparedStatement.executeQuery();
             while (resultSet.next()) {
-                T instance = fromResultSet(clazz, resultSet);
+                T instance = mapper.map(resultSet, mapper.getMetadata().getSelectOrdinals());
                 results.add(instance);
             }
 
-            T[] array = (T[]) Array.newInstance(clazz, results.size());
+            T[] array = newArray(clazz, results.size());
             return results.toArray(array);
         } catch (Exception e) {
             e.printStackTrace();
-            return (T[]) Array.newInstance(clazz, 0);
+            return newArray(clazz, 0);
         }
     }
 
@@ -369,58 +459,68 @@ public class DaoSqlite implements Dao {
             throw new IllegalArgumentException("Cannot read with null column or value.");
         }
 
-        String query = "SELECT * FROM " + clazz.getAnnotation(DaoTable.class).name() + " WHERE ";
-        StringBuilder whereClause = new StringBuilder();
-        for (int i = 0; i < column.length; i++) {
-            whereClause.append(column[i]).append(" = ?");
-            if (i < column.length - 1) {
-                whereClause.append(" AND ");
-            }
-        }
-        query += whereClause + ";";
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        String query = mapper.getMetadata().getSelectByColumnsSql(column);
+        explain(query, (Object[]) value);
 
         List<T> results = new ArrayList<>();
-        try (Connection connection = dataSource.getConnection()) {
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
             for (int i = 0; i < value.length; i++) {
                 preparedStatement.setObject(i + 1, value[i]);
             }
             var resultSet = preparedStatement.executeQuery();
             while (resultSet.next()) {
-                T instance = fromResultSet(clazz, resultSet);
+                T instance = mapper.map(resultSet, mapper.getMetadata().getSelectOrdinals());
                 results.add(instance);
             }
 
-            T[] array = (T[]) Array.newInstance(clazz, results.size());
+            T[] array = newArray(clazz, results.size());
             return results.toArray(array);
         } catch (Exception e) {
             e.printStackTrace();
-            return (T[]) Array.newInstance(clazz, 0);
+            return newArray(clazz, 0);
         }
     }
 
     @Override
     public <T> T[] query(Class<T> clazz, String query) {
-        try (Connection connection = dataSource.getConnection()) {
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
             var resultSet = preparedStatement.executeQuery();
 
+            // Arbitrary SQL, resolve the column layout once per result set
+            int[] ordinals = RowMappers.ordinals(mapper.getMetadata(), resultSet.getMetaData());
             List<T> results = new ArrayList<>();
             while (resultSet.next()) {
-                T instance = fromResultSet(clazz, resultSet);
+                T instance = mapper.map(resultSet, ordinals);
                 results.add(instance);
             }
-            T[] array = (T[]) Array.newInstance(clazz, results.size());
+            T[] array = newArray(clazz, results.size());
             return results.toArray(array);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return (T[]) Array.newInstance(clazz, 0);
+        return newArray(clazz, 0);
+    }
+
+    @Override
+    public <T> T[] query(Query<T> query) {
+        try (Stream<T> stream = stream(query)) {
+            return stream.toArray(size -> newArray(query.getEntityClass(), size));
+        } catch (IllegalArgumentException e) {
+            // A query the caller built wrong, not a database failure
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return newArray(query.getEntityClass(), 0);
     }
 
     @Override
-    public Map[] queryRaw(String query) {
-        try (Connection connection = dataSource.getConnection()) {
+    public Map<String, Object>[] queryRaw(String query) {
+        try (Connection connection = readDataSource.getConnection()) {
             var preparedStatement = connection.prepareStatement(query);
             var resultSet = preparedStatement.executeQuery();
 
@@ -436,29 +536,215 @@ public class DaoSqlite implements Dao {
                 }
                 results.add(row);
             }
-            return results.toArray(new Map[0]);
+            return toRowArray(results);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return new Map[0];
+        return toRowArray(new ArrayList<>());
     }
 
-    private <T> T fromResultSet(Class<T> clazz, ResultSet resultSet) throws Exception {
-        T instance = clazz.getDeclaredConstructor().newInstance();
-        Field[] fields = getAllFields(clazz);
-        for (Field field : fields) {
-            DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
-            if (daoColumn != null) {
-                field.setAccessible(true);
-                if (field.getType() == boolean.class || field.getType() == Boolean.class) {
-                    int intValue = resultSet.getInt(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name());
-                    field.set(instance, intValue != 0);
-                    continue;
+    @Override
+    public <T> Stream<T> streamAll(Class<T> clazz) {
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        EntityMetadata<T> metadata = mapper.getMetadata();
+        return openStream(metadata.getSelectAllSql(), new Object[0],
+                resultSet -> rs -> mapper.map(rs, metadata.getSelectOrdinals()));
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String column, String value) {
+        if (column == null || value == null) {
+            throw new IllegalArgumentException("Cannot read with null column or value.");
+        }
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        EntityMetadata<T> metadata = mapper.getMetadata();
+        explain(metadata.getSelectByColumnSql(column), value);
+        return openStream(metadata.getSelectByColumnSql(column), new Object[]{value},
+                resultSet -> rs -> mapper.map(rs, metadata.getSelectOrdinals()));
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String query) {
+        RowMapper<T> mapper = RowMappers.of(clazz);
+        return openStream(query, new Object[0], resultSet -> {
+            int[] ordinals = RowMappers.ordinals(mapper.getMetadata(), resultSet.getMetaData());
+            return rs -> mapper.map(rs, ordinals);
+        });
+    }
+
+    @Override
+    public <T> Stream<T> stream(Query<T> query) {
+        RowMapper<T> mapper = RowMappers.of(query.getEntityClass());
+        CompiledQuery compiled = compile(query);
+        explain(compiled.sql, parametersOf(query));
+        return openStream(compiled.sql, parametersOf(query), resultSet -> rs -> mapper.map(rs, compiled.ordinals));
+    }
+
+    @Override
+    public Stream<Map<String, Object>> streamRaw(String query) {
+        return openStream(query, new Object[0], resultSet -> {
+            var metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String[] columnNames = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = metaData.getColumnName(i + 1);
+            }
+            return rs -> {
+                Map<String, Object> row = new HashMap<>();
+                for (int i = 0; i < columnCount; i++) {
+                    row.put(columnNames[i], rs.getObject(i + 1));
+                }
+                return row;
+            };
+        });
+    }
+
+    // SQL depends only on the query shape, values are bound on every execution
+    private CompiledQuery compile(Query<?> query) {
+        return compiledQueries.computeIfAbsent(query.shape(), shape -> {
+            EntityMetadata<?> metadata = query.getMetadata();
+            EntityMetadata.Column[] columns = metadata.getColumns();
+            List<String> projection = query.getProjection();
+
+            int[] ordinals;
+            StringJoiner selected = new StringJoiner(", ");
+            if (projection.isEmpty()) {
+                ordinals = metadata.getSelectOrdinals();
+                for (EntityMetadata.Column column : columns) {
+                    selected.add(column.name);
+                }
+            } else {
+                ordinals = new int[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    ordinals[i] = projection.indexOf(columns[i].name) + 1;
+                }
+                projection.forEach(selected::add);
+            }
+
+            StringJoiner whereClause = new StringJoiner(" AND ");
+            for (Query.Predicate predicate : query.getPredicates()) {
+                if (predicate.operator == Query.Operator.IN) {
+                    StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+                    for (int i = 0; i < predicate.values.length; i++) {
+                        placeholders.add("?");
+                    }
+                    whereClause.add(predicate.column + " IN " + placeholders);
+                } else {
+                    whereClause.add(predicate.column + " " + predicate.operator.sql + " ?");
                 }
-                field.set(instance, resultSet.getObject(daoColumn.name().isEmpty() ? field.getName() : daoColumn.name()));
             }
+
+            List<Query.Order> orders = query.getOrders();
+            Object[] afterKey = query.getAfterKey();
+            if (afterKey != null) {
+                if (orders.isEmpty() || orders.size() != afterKey.length) {
+                    throw new IllegalArgumentException("Seek key must have one value per ORDER BY column.");
+                }
+                boolean descending = orders.get(0).descending;
+                StringJoiner keyColumns = new StringJoiner(", ", "(", ")");
+                StringJoiner keyPlaceholders = new StringJoiner(", ", "(", ")");
+                for (Query.Order order : orders) {
+                    if (order.descending != descending) {
+                        throw new IllegalArgumentException("Seek requires all ORDER BY columns in the same direction.");
+                    }
+                    keyColumns.add(order.column);
+                    keyPlaceholders.add("?");
+                }
+                // Row value comparison walks the index from the last seen key
+                whereClause.add(keyColumns + (descending ? " < " : " > ") + keyPlaceholders);
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT ").append(selected).append(" FROM ").append(metadata.getTableName());
+            if (whereClause.length() > 0) {
+                sql.append(" WHERE ").append(whereClause);
+            }
+            if (!orders.isEmpty()) {
+                StringJoiner orderClause = new StringJoiner(", ");
+                for (Query.Order order : orders) {
+                    orderClause.add(order.column + (order.descending ? " DESC" : " ASC"));
+                }
+                sql.append(" ORDER BY ").append(orderClause);
+            }
+            if (query.getLimit() >= 0) {
+                sql.append(" LIMIT ?");
+            }
+            sql.append(";");
+            ILog.d(TAG, "Compiled query: ", sql.toString());
+            return new CompiledQuery(sql.toString(), ordinals);
+        });
+    }
+
+    private static Object[] parametersOf(Query<?> query) {
+        List<Object> parameters = new ArrayList<>();
+        for (Query.Predicate predicate : query.getPredicates()) {
+            for (Object value : predicate.values) {
+                parameters.add(value instanceof Boolean ? ((Boolean) value ? 1 : 0) : value);
+            }
+        }
+        if (query.getAfterKey() != null) {
+            parameters.addAll(Arrays.asList(query.getAfterKey()));
+        }
+        if (query.getLimit() >= 0) {
+            parameters.add(query.getLimit());
         }
-        return instance;
+        return parameters.toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> classOf(T t) {
+        return (Class<T>) t.getClass();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(Class<T> clazz, int length) {
+        return (T[]) Array.newInstance(clazz, length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, Object>[] toRowArray(List<Map<String, Object>> rows) {
+        return rows.toArray(new Map[0]);
+    }
+
+    // Log generated statements whose plan scans a whole table instead of using an index
+    public void setExplainQueryPlan(boolean explainQueryPlan) {
+        this.explainQueryPlan = explainQueryPlan;
+    }
+
+    public boolean isExplainQueryPlan() {
+        return explainQueryPlan;
     }
-}
 
+    private void explain(String query, Object... params) {
+        if (!explainQueryPlan || !explainedQueries.add(query)) {
+            return;
+        }
+        try (Connection connection = readDataSource.getConnection()) {
+            var preparedStatement = connection.prepareStatement("EXPLAIN QUERY PLAN " + query);
+            for (int i = 0; i < params.length; i++) {
+                preparedStatement.setObject(i + 1, params[i]);
+            }
+            var resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                String detail = resultSet.getString("detail");
+                if (detail != null && detail.startsWith("SCAN") && !detail.contains(" INDEX ")) {
+                    ILog.w(TAG, "Full table scan: ", query, "->", detail);
+                } else {
+                    ILog.d(TAG, "Query plan: ", query, "->", String.valueOf(detail));
+                }
+            }
+        } catch (Exception e) {
+            ILog.w(TAG, "Cannot explain query: ", query, e.getMessage());
+        }
+    }
+
+    private <R> Stream<R> openStream(String query, Object[] params, ResultSetSpliterator.RowReaderFactory<R> factory) {
+        ILog.d(TAG, "Opening cursor: ", query);
+        Connection connection;
+        try {
+            connection = readDataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open cursor.", e);
+        }
+        return ResultSetSpliterator.open(connection, query, params, fetchSize, factory);
+    }
+}
@@ -0,0 +1,174 @@
+package org.thingai.platform.dao;
+
+import org.thingai.base.log.ILog;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer thread that drains queued mutations into grouped transactions, so one fsync is
+ * shared by every mutation of a group. A mutation that fails is rolled back to its savepoint and
+ * only its own future fails, the rest of the group still commits.
+ */
+class GroupCommitWriter implements AutoCloseable {
+    private static final String TAG = "GroupCommitWriter";
+
+    interface Mutation {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static class Entry {
+        final Mutation mutation;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Entry(Mutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final BlockingQueue<Entry> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    GroupCommitWriter(DataSource dataSource, int queueCapacity, int maxBatchSize, long maxDelayMillis) {
+        if (queueCapacity <= 0 || maxBatchSize <= 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid group commit settings.");
+        }
+        this.dataSource = dataSource;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writerThread = new Thread(this::run, TAG);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Blocks while the queue is full, the future completes once the group is committed
+    CompletableFuture<Void> submit(Mutation mutation) {
+        Entry entry = new Entry(mutation);
+        try {
+            // Wait for room in short steps, so a close while the queue is full releases the caller
+            while (running) {
+                if (queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                    // close() may have taken the last leftovers before the entry got in
+                    if (!running && queue.remove(entry)) {
+                        entry.future.completeExceptionally(closed());
+                    }
+                    return entry.future;
+                }
+            }
+            entry.future.completeExceptionally(closed());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entry.future.completeExceptionally(e);
+        }
+        return entry.future;
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("Group commit writer is closed.");
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Take whatever is already queued, then wait up to the delay for more
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Entry> batch) {
+        Throwable[] failures = new Throwable[batch.size()];
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        batch.get(i).mutation.apply(connection);
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        failures[i] = e;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (Exception e) {
+            ILog.e(TAG, "Group commit of " + batch.size() + " mutations failed: " + e.getMessage());
+            for (Entry entry : batch) {
+                entry.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] != null) {
+                batch.get(i).future.completeExceptionally(failures[i]);
+            } else {
+                batch.get(i).future.complete(null);
+            }
+        }
+    }
+
+    // Stops accepting mutations and commits everything already queued
+    @Override
+    public void close() {
+        // The writer notices within one poll interval and drains what is queued
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.future.completeExceptionally(closed());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.thingai.platform.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks an open result set row by row. Owns the connection, statement and result set, which are
+ * released when the stream is closed or the last row has been read.
+ */
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+    interface RowReader<T> {
+        T read(ResultSet resultSet) throws SQLException;
+    }
+
+    // Created once the result set is open, so column layout can be resolved up front
+    interface RowReaderFactory<T> {
+        RowReader<T> create(ResultSet resultSet) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private final ResultSet resultSet;
+    private final RowReader<T> reader;
+    private boolean closed;
+
+    private ResultSetSpliterator(Connection connection, PreparedStatement preparedStatement, ResultSet resultSet, RowReader<T> reader) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.connection = connection;
+        this.preparedStatement = preparedStatement;
+        this.resultSet = resultSet;
+        this.reader = reader;
+    }
+
+    static <T> Stream<T> open(Connection connection, String query, Object[] params, int fetchSize, RowReaderFactory<T> factory) {
+        PreparedStatement preparedStatement = null;
+        try {
+            preparedStatement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                preparedStatement.setObject(i + 1, params[i]);
+            }
+            ResultSet resultSet = preparedStatement.executeQuery();
+            ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(connection, preparedStatement, resultSet, factory.create(resultSet));
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } catch (Exception e) {
+            closeQuietly(preparedStatement);
+            closeQuietly(connection);
+            throw new RuntimeException("Failed to open cursor.", e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (!resultSet.next()) {
+                close();
+                return false;
+            }
+            action.accept(reader.read(resultSet));
+            return true;
+        } catch (SQLException e) {
+            close();
+            throw new RuntimeException("Failed to read record.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(resultSet);
+        closeQuietly(preparedStatement);
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
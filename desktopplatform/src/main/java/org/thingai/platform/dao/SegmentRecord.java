@@ -0,0 +1,205 @@
+package org.thingai.platform.dao;
+
+import org.thingai.base.dao.EntityMetadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Record format of {@link DaoSegmentStore} segment files:
+ *
+ * <pre>
+ * int crc | int body length | long sequence | byte type | body
+ * body: table, key, then for PUT a column count and (name, tag, value) per column
+ * </pre>
+ *
+ * The CRC covers everything after the length, so a torn or corrupt record is detected on replay
+ * and on every read. Columns are stored by name, so adding a column to an entity keeps old
+ * records readable.
+ */
+final class SegmentRecord {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte CLEAR = 3;
+    static final int HEADER_SIZE = 17;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte BYTES = 4;
+
+    final byte type;
+    final long sequence;
+    final String table;
+    final String key;
+    // Positioned at the column count of a PUT
+    private final ByteBuffer values;
+
+    private SegmentRecord(byte type, long sequence, String table, String key, ByteBuffer values) {
+        this.type = type;
+        this.sequence = sequence;
+        this.table = table;
+        this.key = key;
+        this.values = values;
+    }
+
+    // Body of a PUT, or of a DELETE or CLEAR when entity is null
+    static <T> byte[] body(String table, String key, EntityMetadata<T> metadata, T entity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeUtf(out, table);
+            writeUtf(out, key);
+            if (entity != null) {
+                EntityMetadata.Column[] columns = metadata.getColumns();
+                out.writeShort(columns.length);
+                for (EntityMetadata.Column column : columns) {
+                    writeUtf(out, column.name);
+                    writeValue(out, column.toSql(column.get(entity)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read columns of " + table + ".", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static int size(byte[] body) {
+        return HEADER_SIZE + body.length;
+    }
+
+    static void write(ByteBuffer out, long sequence, byte type, byte[] body) {
+        int start = out.position();
+        out.putInt(0);
+        out.putInt(body.length);
+        out.putLong(sequence);
+        out.put(type);
+        out.put(body);
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = out.duplicate();
+        checked.position(start + 8);
+        checked.limit(out.position());
+        crc.update(checked);
+        out.putInt(start, (int) crc.getValue());
+    }
+
+    /**
+     * Reads the record at the buffer position and moves past it. Returns null, leaving the position
+     * alone, when the bytes there are not a complete record with a valid CRC.
+     */
+    static SegmentRecord read(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int crc = in.getInt(start);
+        int length = in.getInt(start + 4);
+        if (length < 0 || length > in.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        CRC32 actual = new CRC32();
+        ByteBuffer checked = in.duplicate();
+        checked.position(start + 8);
+        checked.limit(start + HEADER_SIZE + length);
+        actual.update(checked);
+        if ((int) actual.getValue() != crc) {
+            return null;
+        }
+
+        ByteBuffer body = in.duplicate();
+        body.position(start + HEADER_SIZE);
+        body.limit(start + HEADER_SIZE + length);
+        body = body.slice();
+        long sequence = in.getLong(start + 8);
+        byte type = in.get(start + 16);
+        String table = readUtf(body);
+        String key = readUtf(body);
+        in.position(start + HEADER_SIZE + length);
+        return new SegmentRecord(type, sequence, table, key, body);
+    }
+
+    // Column values as stored, numbers as Long or Double
+    Map<String, Object> values() {
+        ByteBuffer in = values.duplicate();
+        int count = in.getShort() & 0xffff;
+        Map<String, Object> result = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = readUtf(in);
+            result.put(name, readValue(in));
+        }
+        return result;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String || value instanceof Character) {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            throw new IllegalArgumentException("Unsupported column value type " + value.getClass().getName() + ".");
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.getLong();
+            case DOUBLE:
+                return in.getDouble();
+            case STRING: {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case BYTES: {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return bytes;
+            }
+            default:
+                throw new IllegalStateException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    // Short length and plain UTF-8, unlike writeUTF it keeps the NUL that joins composite keys
+    private static void writeUtf(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("Table, key or column name is longer than 65535 bytes.");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readUtf(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
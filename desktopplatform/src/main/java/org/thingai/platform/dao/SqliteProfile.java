@@ -0,0 +1,108 @@
+package org.thingai.platform.dao;
+
+/**
+ * Connection settings for {@link DaoSqlite}. A null or non-positive value keeps the SQLite default.
+ * {@link #defaults()} matches the historical single pool, {@link #performance()} enables WAL with a
+ * single writer connection and a read-only pool sized to the number of cores.
+ */
+public class SqliteProfile {
+    private String journalMode;
+    private String synchronous;
+    private long mmapSize;
+    private Integer cacheSize;
+    private String tempStore;
+    private int busyTimeout;
+    private boolean splitReadWrite;
+    private int poolSize = 10;
+    private int readPoolSize = Runtime.getRuntime().availableProcessors();
+
+    public static SqliteProfile defaults() {
+        return new SqliteProfile();
+    }
+
+    public static SqliteProfile performance() {
+        SqliteProfile profile = new SqliteProfile();
+        profile.setJournalMode("WAL");
+        profile.setSynchronous("NORMAL");
+        profile.setMmapSize(256L * 1024 * 1024);
+        profile.setCacheSize(-64 * 1024); // negative means KiB, 64 MiB
+        profile.setTempStore("MEMORY");
+        profile.setBusyTimeout(5000);
+        profile.setSplitReadWrite(true);
+        return profile;
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    public void setJournalMode(String journalMode) {
+        this.journalMode = journalMode;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public void setSynchronous(String synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    public void setMmapSize(long mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    public void setTempStore(String tempStore) {
+        this.tempStore = tempStore;
+    }
+
+    public int getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    public void setBusyTimeout(int busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+
+    public boolean isSplitReadWrite() {
+        return splitReadWrite;
+    }
+
+    // Route writes to one dedicated connection and reads to a separate read-only pool
+    public void setSplitReadWrite(boolean splitReadWrite) {
+        this.splitReadWrite = splitReadWrite;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    // Size of the shared pool when reads and writes are not split
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getReadPoolSize() {
+        return readPoolSize;
+    }
+
+    public void setReadPoolSize(int readPoolSize) {
+        this.readPoolSize = readPoolSize;
+    }
+}
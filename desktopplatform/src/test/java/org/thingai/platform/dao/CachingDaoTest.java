@@ -0,0 +1,103 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thingai.base.dao.BatchInsertException;
+import org.thingai.base.dao.CachingDao;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDaoTest {
+
+    @DaoTable(name = "device")
+    static class Device {
+        @DaoColumn(primaryKey = true, autoIncrement = true)
+        Integer id;
+        @DaoColumn
+        String name;
+
+        Device() {
+
+        }
+
+        Device(Integer id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private DaoSqlite sqlite;
+    private CachingDao dao;
+
+    @BeforeEach
+    void setUp() {
+        sqlite = new DaoSqlite(directory.resolve("test.db").toString());
+        dao = new CachingDao(sqlite, 100, 100);
+        dao.initDao(new Class<?>[]{Device.class});
+    }
+
+    @AfterEach
+    void tearDown() {
+        sqlite.close();
+    }
+
+    @Test
+    void insertWithGeneratedIdDropsCachedMiss() {
+        assertNull(dao.findById(Device.class, 1));
+
+        // The id is assigned by the database and never written back into the entity
+        dao.insertOrUpdate(new Device(null, "sensor"));
+
+        Device device = dao.findById(Device.class, 1);
+        assertNotNull(device);
+        assertEquals("sensor", device.name);
+    }
+
+    @Test
+    void updateWithIdOnlyDropsThatEntity() {
+        dao.insertOrUpdate(new Device(1, "a"));
+        dao.insertOrUpdate(new Device(2, "b"));
+        Device cached = dao.findById(Device.class, 2);
+        long hits = dao.getEntityStats().getHitCount();
+
+        dao.insertOrUpdate(new Device(1, "a2"));
+
+        assertEquals("a2", dao.findById(Device.class, 1).name);
+        assertSame(cached, dao.findById(Device.class, 2));
+        assertEquals(hits + 1, dao.getEntityStats().getHitCount());
+    }
+
+    @Test
+    void rawWriteInvalidatesMentionedTableWhateverTheCase() {
+        dao.insertOrUpdate(new Device(1, "a"));
+        assertEquals(1, dao.readAll(Device.class).length);
+
+        // Written behind the cache, then a statement that is not a SELECT names the table
+        sqlite.insertOrUpdate(new Device(2, "b"));
+        dao.queryRaw("PRAGMA table_info(DEVICE)");
+
+        assertEquals(2, dao.readAll(Device.class).length);
+        assertNotNull(dao.findById(Device.class, 2));
+    }
+
+    @Test
+    void failedArrayBatchStillInvalidatesCommittedChunks() {
+        assertEquals(0, dao.readAll(Device.class).length);
+        sqlite.setBatchSize(2);
+
+        assertThrows(BatchInsertException.class,
+                () -> dao.insertBatch(new Device[]{new Device(1, "a"), new Device(2, "b"), new Device(3, "c"), null}));
+
+        // The first chunk is committed
+        assertEquals(2, dao.readAll(Device.class).length);
+    }
+}
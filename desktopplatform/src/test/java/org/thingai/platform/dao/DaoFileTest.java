@@ -0,0 +1,84 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DaoFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaceKeepsTheTargetPermissions() throws Exception {
+        assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+        DaoFile dao = new DaoFile(directory.toString());
+        dao.writeJsonFile("a.json", "{}");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(directory.resolve("a.json"), permissions);
+
+        dao.writeJsonFile("a.json", "{\"v\":1}");
+
+        assertEquals(permissions, Files.getPosixFilePermissions(directory.resolve("a.json")));
+    }
+
+    @Test
+    void newFileGetsDefaultPermissions() throws Exception {
+        assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+        DaoFile dao = new DaoFile(directory.toString());
+        Path reference = Files.createFile(directory.resolve("reference"));
+
+        dao.writeJsonFile("new.json", "{}");
+
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(directory.resolve("new.json")));
+    }
+
+    @Test
+    void readsLargeFilesIntoTheHeap() throws Exception {
+        DaoFile dao = new DaoFile(directory.toString());
+        // Multi-byte characters across the old mapping threshold
+        String content = "\"" + "\u00e9".repeat(1024 * 1024) + "\"";
+        Files.writeString(directory.resolve("large.json"), content, StandardCharsets.UTF_8);
+
+        assertEquals(content, dao.readJsonFile("large.json"));
+    }
+
+    @Test
+    void writtenContentIsCachedUntilTheFileChanges() throws Exception {
+        DaoFile dao = new DaoFile(directory.toString());
+        dao.writeJsonFile("a.json", "{\"v\":1}");
+        String cached = dao.readJsonFile("a.json");
+        assertSame(cached, dao.readJsonFile("a.json"));
+
+        // Same length, different content, written behind the cache
+        Files.writeString(directory.resolve("a.json"), "{\"v\":2}");
+        Files.setLastModifiedTime(directory.resolve("a.json"),
+                FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        assertEquals("{\"v\":2}", dao.readJsonFile("a.json"));
+    }
+
+    @Test
+    void cacheLimitIsCheckedInBytes() throws Exception {
+        DaoFile dao = new DaoFile(directory.toString());
+        dao.setMaxCachedFileSize(10);
+        // 8 chars but 14 bytes in UTF-8
+        String content = "\"\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\"";
+        dao.writeJsonFile("a.json", content);
+
+        String read = dao.readJsonFile("a.json");
+        assertEquals(content, read);
+        assertNotSame(content, read);
+    }
+}
@@ -0,0 +1,222 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thingai.base.dao.BatchInsertException;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaoSegmentStoreTest {
+
+    @DaoTable(name = "reading")
+    static class Reading {
+        @DaoColumn(primaryKey = true)
+        Integer id;
+        @DaoColumn
+        String value;
+
+        Reading() {
+
+        }
+
+        Reading(Integer id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    @DaoTable(name = "note")
+    static class Note {
+        @DaoColumn
+        String text;
+
+        Note() {
+
+        }
+
+        Note(String text) {
+            this.text = text;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private DaoSegmentStore open() {
+        DaoSegmentStore store = new DaoSegmentStore(directory.toString());
+        store.setCompactionInterval(0, TimeUnit.SECONDS);
+        store.setMaxSegmentSize(1024);
+        store.initDao(new Class<?>[]{Reading.class, Note.class});
+        return store;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void tornAppendIsCutOffOnRestart() throws IOException {
+        DaoSegmentStore store = open();
+        store.insertOrUpdate(new Reading(1, "a"));
+        store.insertOrUpdate(new Reading(2, "b"));
+        store.close();
+
+        // Half a record header, as left by a crash during an append
+        List<Path> files = segmentFiles();
+        Files.write(files.get(files.size() - 1), new byte[]{1, 2, 3, 4, 0, 0, 0, 9}, StandardOpenOption.APPEND);
+
+        store = open();
+        assertEquals("b", store.findById(Reading.class, 2).value);
+        store.insertOrUpdate(new Reading(3, "c"));
+        store.close();
+
+        store = open();
+        assertEquals(3, store.readAll(Reading.class).length);
+        assertEquals("c", store.findById(Reading.class, 3).value);
+        store.close();
+    }
+
+    @Test
+    void findByIdDuringCompactionSeesEveryRow() throws Exception {
+        DaoSegmentStore store = open();
+        for (int round = 0; round < 20; round++) {
+            for (int id = 0; id < 10; id++) {
+                store.insertOrUpdate(new Reading(id, "v" + round));
+            }
+        }
+        int segmentsBefore = store.getSegmentCount();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get() && failure.get() == null) {
+                for (int id = 0; id < 10; id++) {
+                    Reading reading = store.findById(Reading.class, id);
+                    if (reading == null || !reading.value.equals("v19")) {
+                        failure.set("Row " + id + " read as " + (reading == null ? null : reading.value));
+                    }
+                }
+            }
+        });
+        reader.start();
+        store.compact();
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        store.close();
+    }
+
+    @Test
+    void deletedRowsStayDeletedAfterCompactionAndRestart() throws IOException {
+        DaoSegmentStore store = open();
+        // Live rows keep the oldest segment, so later tombstones still shadow it
+        for (int id = 0; id < 20; id++) {
+            store.insertOrUpdate(new Reading(id, "keep"));
+        }
+        for (int id = 100; id < 140; id++) {
+            store.insertOrUpdate(new Reading(id, "drop"));
+        }
+        for (int id = 100; id < 140; id++) {
+            store.delete(Reading.class, id);
+        }
+        store.insertOrUpdate(new Reading(0, "keep"));
+
+        store.compact();
+        // Tombstones still needed are live, a second pass has nothing to rewrite
+        List<Path> compacted = segmentFiles();
+        store.compact();
+        assertEquals(compacted, segmentFiles());
+        store.close();
+
+        store = open();
+        for (int id = 100; id < 140; id++) {
+            assertNull(store.findById(Reading.class, id));
+        }
+        assertEquals(20, store.readAll(Reading.class).length);
+        store.close();
+    }
+
+    @Test
+    void clearSurvivesCompactionAndRestart() {
+        DaoSegmentStore store = open();
+        for (int id = 0; id < 30; id++) {
+            store.insertOrUpdate(new Reading(id, "old"));
+        }
+        store.deleteAll(Reading.class);
+        for (int id = 30; id < 60; id++) {
+            store.insertOrUpdate(new Reading(id, "new"));
+        }
+        store.compact();
+        store.close();
+
+        store = open();
+        Reading[] readings = store.readAll(Reading.class);
+        assertEquals(30, readings.length);
+        for (Reading reading : readings) {
+            assertEquals("new", reading.value);
+        }
+        assertNull(store.findById(Reading.class, 0));
+        store.close();
+    }
+
+    @Test
+    void writesAfterCloseThrow() {
+        DaoSegmentStore store = open();
+        assertThrows(IllegalArgumentException.class, () -> store.setMaxSegmentSize(Integer.MAX_VALUE + 1L));
+        store.close();
+        store.close();
+
+        assertThrows(IllegalStateException.class, () -> store.insertOrUpdate(new Reading(1, "a")));
+        assertTrue(store.submitInsertOrUpdate(new Reading(2, "b")).isCompletedExceptionally());
+    }
+
+    @Test
+    void interruptedReadLeavesTheStoreUsable() {
+        DaoSegmentStore store = open();
+        store.insertOrUpdate(new Reading(1, "a"));
+
+        Thread.currentThread().interrupt();
+        Reading reading = store.findById(Reading.class, 1);
+        // The interrupt is kept for the caller
+        assertTrue(Thread.interrupted());
+        assertEquals("a", reading.value);
+
+        assertEquals("a", store.findById(Reading.class, 1).value);
+        store.insertOrUpdate(new Reading(2, "b"));
+        assertEquals("b", store.findById(Reading.class, 2).value);
+        store.close();
+    }
+
+    @Test
+    void rowIdsUsedByAFailedBatchAreNotReusedAfterRestart() {
+        DaoSegmentStore store = open();
+        assertThrows(BatchInsertException.class,
+                () -> store.insertBatch(new Note[]{new Note("a"), new Note("b"), new Note("c"), null}));
+        for (String text : new String[]{"d", "e", "f"}) {
+            store.insertOrUpdate(new Note(text));
+        }
+        store.close();
+
+        DaoSegmentStore reopened = open();
+        reopened.insertOrUpdate(new Note("g"));
+        assertEquals(4, reopened.readAll(Note.class).length);
+        reopened.close();
+    }
+}
@@ -0,0 +1,72 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thingai.base.dao.Query;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaoSqliteTest {
+
+    @DaoTable(name = "sensor")
+    static class Sensor {
+        @DaoColumn(primaryKey = true, autoIncrement = true)
+        Integer id;
+        @DaoColumn
+        String name;
+        @DaoColumn
+        double value;
+
+        Sensor() {
+
+        }
+
+        Sensor(Integer id, String name, double value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private DaoSqlite dao;
+
+    @BeforeEach
+    void setUp() {
+        dao = new DaoSqlite(directory.resolve("test.db").toString());
+        dao.initDao(new Class<?>[]{Sensor.class});
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    @Test
+    void queryPagesWithSeekKey() {
+        for (int i = 1; i <= 5; i++) {
+            dao.insertOrUpdate(new Sensor(i, "s" + i, i));
+        }
+
+        Sensor[] page = dao.query(Query.from(Sensor.class).orderBy("id").after(2).limit(2));
+
+        assertEquals(2, page.length);
+        assertEquals(3, page[0].id);
+        assertEquals(4, page[1].id);
+    }
+
+    @Test
+    void queryRethrowsCallerErrors() {
+        Query<Sensor> query = Query.from(Sensor.class).orderBy("id").after(1, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> dao.query(query));
+    }
+}
@@ -0,0 +1,116 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private SQLiteDataSource dataSource() throws SQLException {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + directory.resolve("test.db"));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS item (id INTEGER PRIMARY KEY);");
+        }
+        return dataSource;
+    }
+
+    private static GroupCommitWriter.Mutation insert(int id) {
+        return connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO item (id) VALUES (" + id + ");");
+            }
+        };
+    }
+
+    private static int count(SQLiteDataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM item;")) {
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    void failedMutationDoesNotFailItsGroup() throws Exception {
+        SQLiteDataSource dataSource = dataSource();
+        GroupCommitWriter writer = new GroupCommitWriter(dataSource, 64, 64, 50);
+        CompletableFuture<Void> first = writer.submit(insert(1));
+        CompletableFuture<Void> duplicate = writer.submit(insert(1));
+        CompletableFuture<Void> second = writer.submit(insert(2));
+        writer.close();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertThrows(ExecutionException.class, () -> duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(2, count(dataSource));
+    }
+
+    @Test
+    void submitAfterCloseFails() throws Exception {
+        GroupCommitWriter writer = new GroupCommitWriter(dataSource(), 8, 8, 0);
+        writer.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> writer.submit(insert(1)).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void everySubmitCompletesWhenClosedConcurrently() throws Exception {
+        SQLiteDataSource dataSource = dataSource();
+        // Small queue, so producers are also blocked on a full queue when close comes
+        GroupCommitWriter writer = new GroupCommitWriter(dataSource, 4, 4, 1);
+        List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+        AtomicInteger ids = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(8);
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(() -> {
+                started.countDown();
+                for (int j = 0; j < 200; j++) {
+                    futures.add(writer.submit(insert(ids.incrementAndGet())));
+                }
+            });
+            producers[i].start();
+        }
+        started.await();
+        Thread.sleep(20);
+        writer.close();
+        for (Thread producer : producers) {
+            producer.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(producer.isAlive(), "producer still blocked after close");
+        }
+
+        int committed = 0;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                committed++;
+            } catch (TimeoutException e) {
+                fail("future never completed");
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(committed, count(dataSource));
+    }
+}
@@ -0,0 +1,134 @@
+package org.thingai.platform.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqliteProfileTest {
+
+    @DaoTable(name = "sample")
+    static class Sample {
+        @DaoColumn(primaryKey = true)
+        int id;
+        @DaoColumn
+        String name;
+
+        Sample() {
+
+        }
+
+        Sample(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private DaoSqlite open(SqliteProfile profile) {
+        DaoSqlite dao = new DaoSqlite(directory.resolve("test.db").toString(), profile);
+        dao.initDao(new Class<?>[]{Sample.class});
+        return dao;
+    }
+
+    private static Object pragma(DaoSqlite dao, String name) {
+        Map<String, Object>[] rows = dao.queryRaw("PRAGMA " + name + ";");
+        assertEquals(1, rows.length, name);
+        return rows[0].values().iterator().next();
+    }
+
+    @Test
+    void performanceProfileAppliesPragmas() {
+        DaoSqlite dao = open(SqliteProfile.performance());
+        try {
+            // Read through the reader pool, so these are the reader connection settings
+            assertEquals("wal", String.valueOf(pragma(dao, "journal_mode")).toLowerCase());
+            assertEquals(1, ((Number) pragma(dao, "synchronous")).intValue());
+            assertEquals(256L * 1024 * 1024, ((Number) pragma(dao, "mmap_size")).longValue());
+            assertEquals(-64 * 1024, ((Number) pragma(dao, "cache_size")).intValue());
+            assertEquals(2, ((Number) pragma(dao, "temp_store")).intValue());
+            assertEquals(5000, ((Number) pragma(dao, "busy_timeout")).intValue());
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Test
+    void defaultProfileKeepsSqliteDefaults() {
+        DaoSqlite dao = open(SqliteProfile.defaults());
+        try {
+            assertEquals("delete", String.valueOf(pragma(dao, "journal_mode")).toLowerCase());
+            assertEquals(10, dao.getMaxConnections());
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Test
+    void readPoolRejectsWrites() {
+        DaoSqlite dao = open(SqliteProfile.performance());
+        try {
+            dao.insertOrUpdate(new Sample(1, "kept"));
+
+            // queryRaw runs on the read-only pool, the delete fails there
+            Map<String, Object>[] deleted = dao.queryRaw("DELETE FROM sample RETURNING id;");
+
+            assertEquals(0, deleted.length);
+            assertNotNull(dao.findById(Sample.class, 1));
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Test
+    void sharedPoolAcceptsWritesFromAnyConnection() {
+        DaoSqlite dao = open(SqliteProfile.defaults());
+        try {
+            dao.insertOrUpdate(new Sample(1, "gone"));
+
+            Map<String, Object>[] deleted = dao.queryRaw("DELETE FROM sample RETURNING id;");
+
+            assertEquals(1, deleted.length);
+            assertNull(dao.findById(Sample.class, 1));
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Test
+    void splitPoolsSeeEachOthersWrites() {
+        SqliteProfile profile = SqliteProfile.performance();
+        profile.setReadPoolSize(3);
+        DaoSqlite dao = open(profile);
+        try {
+            assertEquals(4, dao.getMaxConnections());
+            for (int i = 0; i < 100; i++) {
+                dao.insertOrUpdate(new Sample(i, "s" + i));
+            }
+
+            assertEquals(100, dao.readAll(Sample.class).length);
+            assertEquals("s42", dao.findById(Sample.class, 42).name);
+        } finally {
+            dao.close();
+        }
+    }
+
+    @Test
+    void inMemoryDatabaseIsNeverSplit() {
+        SqliteProfile profile = SqliteProfile.performance();
+        profile.setPoolSize(1);
+        DaoSqlite dao = new DaoSqlite(":memory:", profile);
+        try {
+            assertEquals(1, dao.getMaxConnections());
+        } finally {
+            dao.close();
+        }
+    }
+}
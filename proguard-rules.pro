@@ -7,4 +7,15 @@
 
 -keep public class * {
     public static void main(java.lang.String[]);
-}
\ No newline at end of file
+}
+# Dao annotations and the API generated mappers compile against
+-keepattributes *Annotation*,Signature
+-keep class org.thingai.base.dao.annotations.** { *; }
+-keep class org.thingai.base.dao.RowMapper { *; }
+-keep class org.thingai.base.dao.RowMappers { *; }
+-keep class org.thingai.base.dao.EntityMetadata { *; }
+-keep class org.thingai.base.dao.EntityMetadata$Column { *; }
+-keep class org.thingai.base.dao.EntityMetadata$Index { *; }
+
+# Generated mappers are listed in META-INF/services and created by ServiceLoader
+-keep class **_DaoMapper { public <init>(); }
@@ -0,0 +1,112 @@
+package org.thingai.base.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed get/put throughput of {@link ConcurrentLRUCache} against an {@link LRUCache} behind one
+ * lock, from 1 to 32 threads. Keys are skewed so most reads hit a small hot set, the way entity
+ * ids are usually read; a put is done for every miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentLRUCacheBenchmark {
+    private static final int CAPACITY = 10_000;
+    private static final int KEYS = 1 << 16;
+    private static final int MASK = KEYS - 1;
+
+    static class SynchronizedCache<K, V> {
+        private final LRUCache<K, V> cache = new LRUCache<>(CAPACITY, new HashMap<>());
+
+        synchronized V get(K key) {
+            return cache.get(key);
+        }
+
+        synchronized void put(K key, V value) {
+            cache.put(key, value);
+        }
+    }
+
+    @Param({"concurrent", "synchronized"})
+    public String cache;
+
+    private ConcurrentLRUCache<Integer, Integer> concurrentCache;
+    private SynchronizedCache<Integer, Integer> synchronizedCache;
+    private Integer[] keys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index = new SplittableRandom().nextInt(KEYS);
+    }
+
+    @Setup
+    public void setUp() {
+        concurrentCache = new ConcurrentLRUCache<>(CAPACITY);
+        synchronizedCache = new SynchronizedCache<>();
+        // Boxed once, so the benchmark measures the caches and not Integer.valueOf
+        keys = new Integer[KEYS];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < KEYS; i++) {
+            // Squaring a uniform value skews toward small keys, half of the reads go to the lowest CAPACITY keys
+            double u = random.nextDouble();
+            keys[i] = (int) (u * u * CAPACITY * 4);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            concurrentCache.put(keys[i], keys[i]);
+            synchronizedCache.put(keys[i], keys[i]);
+        }
+    }
+
+    private Integer access(Cursor cursor) {
+        Integer key = keys[cursor.index++ & MASK];
+        if (cache.equals("concurrent")) {
+            Integer value = concurrentCache.get(key);
+            if (value == null) {
+                concurrentCache.put(key, key);
+            }
+            return value;
+        }
+        Integer value = synchronizedCache.get(key);
+        if (value == null) {
+            synchronizedCache.put(key, key);
+        }
+        return value;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer threads01(Cursor cursor) {
+        return access(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer threads04(Cursor cursor) {
+        return access(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Integer threads08(Cursor cursor) {
+        return access(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Integer threads16(Cursor cursor) {
+        return access(cursor);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Integer threads32(Cursor cursor) {
+        return access(cursor);
+    }
+}
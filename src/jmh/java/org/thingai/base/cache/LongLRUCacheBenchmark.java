@@ -0,0 +1,87 @@
+package org.thingai.base.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LongLRUCache} against {@link LRUCache} with boxed {@code Long} keys. {@code mixed} is a
+ * get/put loop over twice as many keys as fit, a put for every miss. {@code fill} builds a cache of
+ * {@link #ENTRIES} entries; run it with {@code -prof gc}, gc.alloc.rate.norm divided by ENTRIES is
+ * the footprint per entry. Values are one shared object in both, so only the cache is counted.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongLRUCacheBenchmark {
+    static final int ENTRIES = 1_000_000;
+    private static final int CAPACITY = 100_000;
+    private static final int KEYS = 1 << 18;
+    private static final int MASK = KEYS - 1;
+    private static final Object VALUE = new Object();
+
+    @Param({"primitive", "boxed"})
+    public String cache;
+
+    private LongLRUCache<Object> primitiveCache;
+    private LRUCache<Long, Object> boxedCache;
+    private long[] keys;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        primitiveCache = new LongLRUCache<>(CAPACITY);
+        boxedCache = new LRUCache<>(CAPACITY, new HashMap<>());
+        keys = new long[KEYS];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = random.nextLong(CAPACITY * 2L);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            primitiveCache.put(keys[i], VALUE);
+            boxedCache.put(keys[i], VALUE);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object mixed() {
+        long key = keys[cursor++ & MASK];
+        if (cache.equals("primitive")) {
+            Object value = primitiveCache.get(key);
+            if (value == null) {
+                primitiveCache.put(key, VALUE);
+            }
+            return value;
+        }
+        Object value = boxedCache.get(key);
+        if (value == null) {
+            boxedCache.put(key, VALUE);
+        }
+        return value;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public Object fill() {
+        if (cache.equals("primitive")) {
+            LongLRUCache<Object> filled = new LongLRUCache<>(ENTRIES);
+            for (long key = 0; key < ENTRIES; key++) {
+                filled.put(key, VALUE);
+            }
+            return filled;
+        }
+        LRUCache<Long, Object> filled = new LRUCache<>(ENTRIES, new HashMap<>());
+        for (long key = 0; key < ENTRIES; key++) {
+            filled.put(key, VALUE);
+        }
+        return filled;
+    }
+}
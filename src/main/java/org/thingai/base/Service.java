@@ -1,25 +1,77 @@
 package org.thingai.base;
 
+import org.thingai.base.concurrent.VirtualThreads;
+import org.thingai.base.config.ConfigListener;
+import org.thingai.base.config.ConfigSchema;
+import org.thingai.base.config.ConfigWatcher;
+import org.thingai.base.config.ServiceConfig;
+import org.thingai.base.log.AsyncLog;
+import org.thingai.base.log.ILog;
+import org.thingai.base.log.LogSink;
+import org.thingai.base.log.OverflowPolicy;
+import org.thingai.base.log.RollingFileSink;
+
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Base for long running services. {@link #init()} prepares the app directory and log, then starts
+ * managed execution: tasks from {@link #submit} run one per (virtual, when available) thread, at
+ * most {@link #maxConcurrentTasks} at a time, and periodic jobs share one scheduler thread. Scheduled
+ * runs count against the same limit.
+ * {@link #shutdown()} drains in-flight work for up to {@link #shutdownTimeoutMillis}. The config
+ * file is parsed once and reloaded when it changes, see {@link #getConfig()}.
+ *
+ * <p>{@link ILog} has one backend per process. The first service to init installs its log file
+ * there; a later one in the same process, or one started after the application set its own
+ * backend, logs to the backend already in place and does not open its log file.
+ */
 public abstract class Service {
+    private static final String TAG = "Service";
+
     public String name;
     public String version;
     public String appDirName;
     public String configFile;
     public String logFile;
+    public int maxConcurrentTasks = 10_000;
+    public long shutdownTimeoutMillis = 30_000;
 
     protected String appDir;
 
-    private Thread serviceThread;
+    private AsyncLog serviceLog;
+    private ConfigWatcher configWatcher;
+    private ExecutorService executor;
+    private ScheduledThreadPoolExecutor scheduler;
+    private Semaphore taskPermits;
+    private final Queue<Runnable> waitingRuns = new ConcurrentLinkedQueue<>();
+    private final LongAdder coalescedTicks = new LongAdder();
 
     protected Service() {
 
     }
 
     public void init() {
+        // Checked before anything is started, a bad setting must not leave a watcher or log behind
+        if (maxConcurrentTasks <= 0) {
+            throw new IllegalArgumentException("Max concurrent tasks must be positive.");
+        }
+
         // Default values for the application properties
         version = version != null ? version : "1.0.0";
         appDirName = appDirName != null ? appDirName : name;
@@ -30,8 +82,8 @@ public abstract class Service {
         appDir = Paths.get(home, ".thingai", appDirName).toString();
 
         Path appDirPath = Paths.get(appDir);
-        Path configFilePath = Paths.get(appDir, "config.properties");
-        Path logFilePath = Paths.get(appDir, "application.log");
+        Path configFilePath = appDirPath.resolve(configFile);
+        Path logFilePath = appDirPath.resolve(logFile);
         try {
             if (!Files.exists(appDirPath)) {
                 Files.createDirectories(appDirPath);
@@ -39,27 +91,239 @@ public abstract class Service {
             if (!Files.exists(configFilePath)) {
                 Files.createFile(configFilePath);
             }
-            if (!Files.exists(logFilePath)) {
-                Files.createFile(logFilePath);
-            }
 
         } catch (Exception e) {
             System.err.println("Error creating application directories or files: " + e.getMessage());
         }
 
+        try {
+            configWatcher = new ConfigWatcher(configFilePath, createConfigSchema());
+            configWatcher.start();
+        } catch (IOException e) {
+            System.err.println("Error loading config file: " + e.getMessage());
+        }
+
+        // Log events go to the log file through a background writer, unless a backend is already set
+        if (!ILog.isDefaultBackend()) {
+            ILog.i(TAG, "Log backend already set, not opening", logFilePath.toString());
+        } else {
+            try {
+                AsyncLog log = new AsyncLog(createLogSink(logFilePath), 8192, OverflowPolicy.DROP);
+                if (ILog.setBackendIfDefault(log)) {
+                    log.registerShutdownHook();
+                    serviceLog = log;
+                } else {
+                    // Another service won the race
+                    log.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error opening log file: " + e.getMessage());
+            }
+        }
+
+        String threadName = name != null ? name : TAG;
+        executor = VirtualThreads.newThreadPerTaskExecutor(threadName + "-task");
+        taskPermits = new Semaphore(maxConcurrentTasks);
+        // The scheduler thread only hands ticks to the executor, so one is enough for every job
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
         onServiceInit();
     }
 
+    /**
+     * Runs the task on its own thread. Blocks while {@link #maxConcurrentTasks} tasks are in flight,
+     * so a fast producer is slowed down instead of queueing without bound.
+     */
+    public Future<?> submit(Runnable task) {
+        return submit(Executors.callable(task));
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        checkInitialized();
+        try {
+            taskPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a task slot.", e);
+        }
+        return dispatch(task);
+    }
+
+    // Like submit but returns null instead of waiting when the service is at capacity
+    public Future<?> trySubmit(Runnable task) {
+        checkInitialized();
+        if (!taskPermits.tryAcquire()) {
+            return null;
+        }
+        return dispatch(Executors.callable(task));
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        checkInitialized();
+        return scheduler.schedule(() -> runScheduled(task, null), delay, unit);
+    }
+
+    /**
+     * Runs the task every period on the task executor. A tick that comes while the previous run is
+     * still going, or still waiting for a task slot, is skipped rather than queued, so a slow job
+     * never builds a backlog of runs.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        checkInitialized();
+        AtomicBoolean running = new AtomicBoolean();
+        return scheduler.scheduleAtFixedRate(() -> {
+            if (!running.compareAndSet(false, true)) {
+                coalescedTicks.increment();
+                return;
+            }
+            runScheduled(task, running);
+        }, initialDelay, period, unit);
+    }
+
+    // Current snapshot, a volatile read, so it is fine to call per request
+    public ServiceConfig getConfig() {
+        ConfigWatcher watcher = configWatcher;
+        return watcher != null ? watcher.get() : ServiceConfig.empty();
+    }
+
+    public void addConfigListener(ConfigListener listener) {
+        checkInitialized();
+        if (configWatcher != null) {
+            configWatcher.addListener(listener);
+        }
+    }
+
+    public void removeConfigListener(ConfigListener listener) {
+        if (configWatcher != null) {
+            configWatcher.removeListener(listener);
+        }
+    }
+
+    public int getActiveTaskCount() {
+        return taskPermits != null ? maxConcurrentTasks - taskPermits.availablePermits() : 0;
+    }
+
+    public long getCoalescedTickCount() {
+        return coalescedTicks.sum();
+    }
+
     public void shutdown() {
-        if (serviceThread != null && serviceThread.isAlive()) {
-            serviceThread.interrupt();
+        onServiceShutdown();
+
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+
+        if (executor != null) {
+            scheduler.shutdown();
+            executor.shutdown();
             try {
-                serviceThread.join();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+                if (!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    ILog.w(TAG, "Tasks still running after shutdown timeout, interrupting");
+                    executor.shutdownNow();
+                }
+                scheduler.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
             } catch (InterruptedException e) {
+                executor.shutdownNow();
                 Thread.currentThread().interrupt();
             }
+            scheduler.shutdownNow();
         }
+
+        if (serviceLog != null) {
+            ILog.resetBackend(serviceLog);
+            serviceLog.close();
+            serviceLog = null;
+        }
+    }
+
+    // Keys whose values are type checked on load, a reload that fails the check is not applied
+    protected ConfigSchema createConfigSchema() {
+        return new ConfigSchema();
+    }
+
+    // Rolling file by default, override to send the log elsewhere or tune rolling and fsync
+    protected LogSink createLogSink(Path logFilePath) throws IOException {
+        return new RollingFileSink(logFilePath);
     }
 
     protected abstract void onServiceInit();
+
+    // Called first on shutdown, before in-flight tasks are drained
+    protected void onServiceShutdown() {
+
+    }
+
+    private <T> Future<T> dispatch(Callable<T> task) {
+        try {
+            return executor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    releaseTaskPermit();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseTaskPermit();
+            throw e;
+        }
+    }
+
+    // A full service queues the run instead of blocking the scheduler or a task thread, it is
+    // handed to the executor once a permit is free
+    private void runScheduled(Runnable task, AtomicBoolean running) {
+        waitingRuns.add(() -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        ILog.e(TAG, "Scheduled task failed:", String.valueOf(e));
+                    } finally {
+                        if (running != null) {
+                            running.set(false);
+                        }
+                        releaseTaskPermit();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the tick is dropped
+                if (running != null) {
+                    running.set(false);
+                }
+                taskPermits.release();
+            }
+        });
+        startWaitingRuns();
+    }
+
+    private void releaseTaskPermit() {
+        taskPermits.release();
+        startWaitingRuns();
+    }
+
+    // Called after every enqueue and every release, so a waiting run never misses a free permit
+    private void startWaitingRuns() {
+        while (!waitingRuns.isEmpty() && taskPermits.tryAcquire()) {
+            Runnable start = waitingRuns.poll();
+            if (start == null) {
+                taskPermits.release();
+            } else {
+                start.run();
+            }
+        }
+    }
+
+    private void checkInitialized() {
+        if (executor == null) {
+            throw new IllegalStateException("Service is not initialized.");
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package org.thingai.base.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size bounded cache whose eviction order comes from an {@link EvictionPolicy}. Not thread-safe,
+ * same as {@link LRUCache}.
+ */
+public class BoundedCache<K, V> implements Cache<K, V> {
+    private final Map<K, V> cacheMap = new HashMap<>();
+    private final EvictionPolicy<K> policy;
+    private StatsCounter statsCounter = new StatsCounter();
+    private RemovalListener<K, V> removalListener;
+
+    public BoundedCache(EvictionPolicy<K> policy) {
+        this.policy = policy;
+    }
+
+    public static <K, V> BoundedCache<K, V> lru(int maxCacheSize) {
+        return new BoundedCache<>(new LruPolicy<>(maxCacheSize));
+    }
+
+    public static <K, V> BoundedCache<K, V> tinyLfu(int maxCacheSize) {
+        return new BoundedCache<>(new WindowTinyLfuPolicy<>(maxCacheSize));
+    }
+
+    public EvictionPolicy<K> getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    @Override
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    @Override
+    public V get(K key) {
+        V value = cacheMap.get(key);
+        if (value != null || cacheMap.containsKey(key)) {
+            statsCounter.recordHits(1);
+            policy.recordAccess(key);
+        } else {
+            statsCounter.recordMisses(1);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (cacheMap.containsKey(key)) {
+            V oldValue = cacheMap.put(key, value);
+            policy.recordAccess(key);
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+            return;
+        }
+        cacheMap.put(key, value);
+        K victim = policy.recordInsert(key);
+        if (victim != null) {
+            // May be the key just put when the policy rejects it
+            notifyRemoval(victim, cacheMap.remove(victim), RemovalCause.SIZE);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        if (!cacheMap.containsKey(key)) {
+            return null;
+        }
+        policy.recordRemoval(key);
+        V value = cacheMap.remove(key);
+        notifyRemoval(key, value, RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return cacheMap.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return cacheMap.size();
+    }
+
+    @Override
+    public void clear() {
+        for (Map.Entry<K, V> entry : cacheMap.entrySet()) {
+            notifyRemoval(entry.getKey(), entry.getValue(), RemovalCause.EXPLICIT);
+        }
+        cacheMap.clear();
+        policy.clear();
+    }
+
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+}
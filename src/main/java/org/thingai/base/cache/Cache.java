@@ -0,0 +1,15 @@
+package org.thingai.base.cache;
+
+public interface Cache<K, V> {
+    V get(K key);
+    void put(K key, V value);
+    V remove(K key);
+    boolean containsKey(K key);
+    int size();
+    void clear();
+
+    // Counters since creation, all zero while stats recording is off
+    CacheStats stats();
+    void setRecordStats(boolean recordStats);
+    void setRemovalListener(RemovalListener<K, V> removalListener);
+}
@@ -0,0 +1,27 @@
+package org.thingai.base.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes values for a {@link LoadingCache}. Override {@link #loadAll} when the source can fetch
+ * many keys in one round trip, e.g. a single {@code IN} query. A null value means "not found" and
+ * is not cached.
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+    V load(K key) throws Exception;
+
+    // Keys missing from the returned map are treated as not found
+    default Map<K, V> loadAll(Collection<? extends K> keys) throws Exception {
+        Map<K, V> values = new HashMap<>();
+        for (K key : keys) {
+            V value = load(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,13 @@
+package org.thingai.base.cache;
+
+/**
+ * Thrown by {@link LoadingCache} when its {@link CacheLoader} fails with a checked exception, which
+ * is kept as the cause. Unchecked exceptions from the loader are rethrown as they are.
+ */
+public class CacheLoaderException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CacheLoaderException(Throwable cause) {
+        super("Cache loader failed: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,105 @@
+package org.thingai.base.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Replays an access trace against eviction policies and reports their hit ratios. A trace is a
+ * text file with one key per line, a miss is treated as a load followed by a put.
+ *
+ * <pre>java org.thingai.base.cache.CacheSimulator trace.txt 1000 10000</pre>
+ */
+public class CacheSimulator {
+    public static class Result {
+        private final String policy;
+        private final int maximumSize;
+        private final long requests;
+        private final long hits;
+
+        public Result(String policy, int maximumSize, long requests, long hits) {
+            this.policy = policy;
+            this.maximumSize = maximumSize;
+            this.requests = requests;
+            this.hits = hits;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public double getHitRatio() {
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s size=%-8d requests=%-10d hit ratio=%.2f%%",
+                    policy, maximumSize, requests, getHitRatio() * 100);
+        }
+    }
+
+    public static <K> Result simulate(EvictionPolicy<K> policy, int maximumSize, Iterable<K> trace) {
+        BoundedCache<K, Boolean> cache = new BoundedCache<>(policy);
+        long requests = 0;
+        long hits = 0;
+        for (K key : trace) {
+            requests++;
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, Boolean.TRUE);
+            }
+        }
+        return new Result(policy.getClass().getSimpleName(), maximumSize, requests, hits);
+    }
+
+    public static List<String> readTrace(Path path) throws IOException {
+        List<String> trace = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    trace.add(line);
+                }
+            }
+        }
+        return trace;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CacheSimulator <trace file> <cache size>...");
+            System.exit(1);
+        }
+        List<String> trace = readTrace(Paths.get(args[0]));
+        List<IntFunction<EvictionPolicy<String>>> policies = new ArrayList<>();
+        policies.add(LruPolicy::new);
+        policies.add(WindowTinyLfuPolicy::new);
+        for (int i = 1; i < args.length; i++) {
+            int size = Integer.parseInt(args[i]);
+            for (IntFunction<EvictionPolicy<String>> policy : policies) {
+                System.out.println(simulate(policy.apply(size), size, trace));
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.thingai.base.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a cache's counters, taken with {@link Cache#stats()}. Counters only grow,
+ * subtract an earlier snapshot with {@link #minus} to get the activity of an interval.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long[] removalCounts;
+
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long totalLoadTime, long[] removalCounts) {
+        if (removalCounts.length != RemovalCause.values().length) {
+            throw new IllegalArgumentException("Expected one removal count per cause.");
+        }
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.removalCounts = removalCounts.clone();
+    }
+
+    public static CacheStats empty() {
+        return new CacheStats(0, 0, 0, 0, 0, new long[RemovalCause.values().length]);
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    // 1.0 when nothing was requested yet
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public double getMissRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 0.0 : (double) missCount / requests;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    // Nanoseconds spent in the loader, failed loads included
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public double getAverageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    // Size and expiry evictions, explicit removals and replacements are not evictions
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (RemovalCause cause : RemovalCause.values()) {
+            if (cause.wasEvicted()) {
+                evictions += removalCounts[cause.ordinal()];
+            }
+        }
+        return evictions;
+    }
+
+    public long getRemovalCount(RemovalCause cause) {
+        return removalCounts[cause.ordinal()];
+    }
+
+    public CacheStats minus(CacheStats other) {
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = Math.max(0, removalCounts[i] - other.removalCounts[i]);
+        }
+        return new CacheStats(
+                Math.max(0, hitCount - other.hitCount),
+                Math.max(0, missCount - other.missCount),
+                Math.max(0, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0, loadFailureCount - other.loadFailureCount),
+                Math.max(0, totalLoadTime - other.totalLoadTime),
+                removals);
+    }
+
+    public CacheStats plus(CacheStats other) {
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = removalCounts[i] + other.removalCounts[i];
+        }
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime, removals);
+    }
+
+    // Flat name to value view, the same keys for every cache, for metrics export
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new LinkedHashMap<>();
+        map.put("requestCount", getRequestCount());
+        map.put("hitCount", hitCount);
+        map.put("missCount", missCount);
+        map.put("hitRate", getHitRate());
+        map.put("loadSuccessCount", loadSuccessCount);
+        map.put("loadFailureCount", loadFailureCount);
+        map.put("totalLoadTime", totalLoadTime);
+        map.put("averageLoadPenalty", getAverageLoadPenalty());
+        map.put("evictionCount", getEvictionCount());
+        for (RemovalCause cause : RemovalCause.values()) {
+            map.put("removalCount." + cause.name().toLowerCase(Locale.ROOT), removalCounts[cause.ordinal()]);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats" + toMap();
+    }
+}
@@ -0,0 +1,278 @@
+package org.thingai.base.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe LRU cache. Lookups go straight to a {@link ConcurrentHashMap} and only record the hit
+ * in a striped, lossy read buffer; the recency list is reordered in batches by whichever thread
+ * holds the eviction lock, so reads never wait on it. Writes take the lock.
+ */
+public class ConcurrentLRUCache<K, V> implements Cache<K, V> {
+    static class Node<K, V> {
+        final K key;
+        volatile V value;
+        // Guarded by evictionLock
+        Node<K, V> prev;
+        Node<K, V> next;
+        boolean alive = true;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    static class ReadBuffer {
+        static final int SIZE = 64;
+        static final int MASK = SIZE - 1;
+
+        final AtomicReferenceArray<Node<?, ?>> slots = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        // Written under evictionLock only
+        volatile long readCounter;
+    }
+
+    private final int maxCacheSize;
+    private final ConcurrentHashMap<K, Node<K, V>> cacheMap;
+    private final ReadBuffer[] readBuffers;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Node<K, V> head;
+    private final Node<K, V> tail;
+    private volatile StatsCounter statsCounter = new StatsCounter();
+    private volatile RemovalListener<K, V> removalListener;
+
+    public ConcurrentLRUCache(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        this.cacheMap = new ConcurrentHashMap<>();
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+
+        // Init linked list with dummy head and tail
+        this.head = new Node<>(null, null);
+        this.tail = new Node<>(null, null);
+        this.head.next = tail;
+        this.tail.prev = head;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    // The listener runs after the eviction lock is released
+    @Override
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = cacheMap.get(key);
+        if (node == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        afterRead(node);
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        Node<K, V> replaced = null;
+        V replacedValue = null;
+        Node<K, V> evicted = null;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node<K, V> node = cacheMap.get(key);
+            if (node != null) {
+                replaced = node;
+                replacedValue = node.value;
+                node.value = value;
+                moveToHead(node);
+            } else {
+                if (cacheMap.size() >= maxCacheSize) {
+                    // Remove least recently used node
+                    Node<K, V> leastUseNode = tail.prev;
+                    if (leastUseNode != head) {
+                        unlink(leastUseNode);
+                        cacheMap.remove(leastUseNode.key, leastUseNode);
+                        evicted = leastUseNode;
+                    }
+                }
+                Node<K, V> newNode = new Node<>(key, value);
+                cacheMap.put(key, newNode);
+                addToHead(newNode);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        if (replaced != null) {
+            notifyRemoval(key, replacedValue, RemovalCause.REPLACED);
+        }
+        if (evicted != null) {
+            notifyRemoval(evicted.key, evicted.value, RemovalCause.SIZE);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        return remove(key, RemovalCause.EXPLICIT);
+    }
+
+    // Lets a wrapping cache report why it dropped the entry
+    V remove(K key, RemovalCause cause) {
+        Node<K, V> node;
+        evictionLock.lock();
+        try {
+            node = cacheMap.remove(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoval(key, node.value, cause);
+        return node.value;
+    }
+
+    // Removes the entry only while it still holds this exact value
+    public boolean remove(K key, V value) {
+        return remove(key, value, RemovalCause.EXPLICIT);
+    }
+
+    boolean remove(K key, V value, RemovalCause cause) {
+        Node<K, V> node;
+        evictionLock.lock();
+        try {
+            node = cacheMap.get(key);
+            if (node == null || node.value != value) {
+                return false;
+            }
+            cacheMap.remove(key, node);
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoval(key, value, cause);
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return cacheMap.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return cacheMap.size();
+    }
+
+    @Override
+    public void clear() {
+        List<Node<K, V>> removed = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node = head.next; node != tail; node = node.next) {
+                node.alive = false;
+                removed.add(node);
+            }
+            cacheMap.clear();
+            head.next = tail;
+            tail.prev = head;
+            drainReadBuffers();
+        } finally {
+            evictionLock.unlock();
+        }
+        for (Node<K, V> node : removed) {
+            notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        }
+    }
+
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        RemovalListener<K, V> listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(key, value, cause);
+        }
+    }
+
+    private void afterRead(Node<K, V> node) {
+        ReadBuffer buffer = readBuffers[stripe()];
+        long writeCount = buffer.writeCounter.get();
+        long pending = writeCount - buffer.readCounter;
+        // Lossy: a full buffer or a lost race just drops this recency update
+        if (pending < ReadBuffer.SIZE && buffer.writeCounter.compareAndSet(writeCount, writeCount + 1)) {
+            buffer.slots.lazySet((int) (writeCount & ReadBuffer.MASK), node);
+        }
+        if (pending >= ReadBuffer.SIZE / 2 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            long readCount = buffer.readCounter;
+            long writeCount = buffer.writeCounter.get();
+            while (readCount < writeCount) {
+                int index = (int) (readCount & ReadBuffer.MASK);
+                Node<K, V> node = (Node<K, V>) buffer.slots.get(index);
+                if (node == null) {
+                    // Slot claimed but not published yet, pick it up next drain
+                    break;
+                }
+                buffer.slots.lazySet(index, null);
+                if (node.alive) {
+                    moveToHead(node);
+                }
+                readCount++;
+            }
+            buffer.readCounter = readCount;
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (readBuffers.length - 1);
+    }
+
+    private void moveToHead(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        addToHead(node);
+    }
+
+    private void addToHead(Node<K, V> node) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.alive = false;
+    }
+}
@@ -0,0 +1,17 @@
+package org.thingai.base.cache;
+
+/**
+ * Decides which key leaves a bounded cache. The cache reports every access, insert and explicit
+ * removal; {@link #recordInsert} returns the key to drop, which may be the key just inserted when
+ * the policy refuses to admit it.
+ */
+public interface EvictionPolicy<K> {
+    void recordAccess(K key);
+
+    // Returns the key to evict, or null while the cache is under its maximum size
+    K recordInsert(K key);
+
+    void recordRemoval(K key);
+
+    void clear();
+}
@@ -0,0 +1,46 @@
+package org.thingai.base.cache;
+
+/**
+ * LRU cache keyed by primitive {@code int}, e.g. auto increment ids. Keys are widened to
+ * {@code long} and kept in a {@link LongLRUCache}, so it has the same layout and costs: no boxing,
+ * and get, put and remove allocate nothing once constructed. Not thread-safe.
+ */
+public class IntLRUCache<V> {
+    private final LongLRUCache<V> cache;
+
+    public IntLRUCache(int maxCacheSize) {
+        this.cache = new LongLRUCache<>(maxCacheSize);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public void setRecordStats(boolean recordStats) {
+        cache.setRecordStats(recordStats);
+    }
+
+    public V get(int key) {
+        return cache.get(key);
+    }
+
+    public void put(int key, V value) {
+        cache.put(key, value);
+    }
+
+    public V remove(int key) {
+        return cache.remove(key);
+    }
+
+    public boolean containsKey(int key) {
+        return cache.containsKey(key);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
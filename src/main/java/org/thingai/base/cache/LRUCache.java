@@ -1,8 +1,18 @@
 package org.thingai.base.cache;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
-public class LRUCache<K, V> {
+/**
+ * Size bounded LRU cache with optional expiry. Expire-after-write and expire-after-access apply to
+ * entries written after they are set, {@link #put(Object, Object, long, TimeUnit)} gives a single
+ * entry a fixed time to live instead. Expired entries are dropped when they are read and in bulk
+ * by a {@link TimerWheel} on every put or {@link #cleanUp()}, so until then {@link #size()} may
+ * still count them.
+ */
+public class LRUCache<K, V> implements Cache<K, V> {
     static class CacheNode<K, V> {
         K key;
         V value;
@@ -10,11 +20,57 @@ public class LRUCache<K, V> {
         CacheNode<K, V> next;
     }
 
+    // Node of an entry written while expiry is in use, plain entries carry none of this
+    static final class TimedNode<K, V> extends CacheNode<K, V> implements TimerWheel.Node {
+        // Deadline when expires is set
+        long time;
+        boolean expires;
+        long writeTime;
+        long timeToLive;
+        TimerWheel.Node prevInWheel;
+        TimerWheel.Node nextInWheel;
+
+        @Override
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public TimerWheel.Node getPrevInWheel() {
+            return prevInWheel;
+        }
+
+        @Override
+        public void setPrevInWheel(TimerWheel.Node prev) {
+            this.prevInWheel = prev;
+        }
+
+        @Override
+        public TimerWheel.Node getNextInWheel() {
+            return nextInWheel;
+        }
+
+        @Override
+        public void setNextInWheel(TimerWheel.Node next) {
+            this.nextInWheel = next;
+        }
+    }
+
     private final int maxCacheSize;
     private final Map<K, CacheNode<K, V>> cacheMap;
     private final CacheNode<K, V> head;
     private final CacheNode<K, V> tail;
 
+    private long expireAfterWriteNanos;
+    private long expireAfterAccessNanos;
+    private LongSupplier ticker = System::nanoTime;
+    // Created on first use, wheel times are relative to origin so they stay positive
+    private TimerWheel<TimedNode<K, V>> timerWheel;
+    private final Consumer<TimedNode<K, V>> expireCallback = this::expire;
+    private long origin;
+    private StatsCounter statsCounter = new StatsCounter();
+    private RemovalListener<K, V> removalListener;
+
     public LRUCache(int maxCacheSize, Map<K, CacheNode<K, V>> cacheMap) {
         this.maxCacheSize = maxCacheSize;
         this.cacheMap = cacheMap;
@@ -26,59 +82,262 @@ public class LRUCache<K, V> {
         this.tail.prev = head;
     }
 
+    public long getExpireAfterWrite(TimeUnit unit) {
+        return unit.convert(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Zero disables
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        expireAfterWriteNanos = toNanos(duration, unit);
+        if (expireAfterWriteNanos > 0) {
+            initTimerWheel();
+        }
+    }
+
+    public long getExpireAfterAccess(TimeUnit unit) {
+        return unit.convert(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Zero disables
+    public void setExpireAfterAccess(long duration, TimeUnit unit) {
+        expireAfterAccessNanos = toNanos(duration, unit);
+        if (expireAfterAccessNanos > 0) {
+            initTimerWheel();
+        }
+    }
+
+    // Nanosecond time source, must be set before any expiry is configured
+    public void setTicker(LongSupplier ticker) {
+        if (timerWheel != null) {
+            throw new IllegalStateException("Ticker must be set before expiry is used.");
+        }
+        this.ticker = ticker;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    @Override
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    @Override
     public V get(K key) {
-        if (!cacheMap.containsKey(key)) {
+        CacheNode<K, V> node = cacheMap.get(key);
+        if (node == null) {
+            statsCounter.recordMisses(1);
             return null;
         }
-        CacheNode<K, V> node = cacheMap.get(key);
+        TimedNode<K, V> timed = expiring(node);
+        if (timed != null) {
+            long now = now();
+            if (timed.time - now <= 0) {
+                removeEntry(node, RemovalCause.EXPIRED);
+                statsCounter.recordMisses(1);
+                return null;
+            }
+            if (expireAfterAccessNanos > 0 && timed.timeToLive == 0) {
+                updateExpiry(timed, now, false);
+            }
+        }
+        statsCounter.recordHits(1);
         removeNode(node);
         addToHead(node);
         return node.value;
     }
 
+    @Override
     public void put(K key, V value) {
-        if (cacheMap.containsKey(key)) {
-            CacheNode<K, V> node = cacheMap.get(key);
+        put(key, value, 0);
+    }
+
+    // Entry expires after the given time regardless of the cache wide settings
+    public void put(K key, V value, long duration, TimeUnit unit) {
+        long timeToLive = toNanos(duration, unit);
+        if (timeToLive == 0) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        initTimerWheel();
+        put(key, value, timeToLive);
+    }
+
+    private void put(K key, V value, long timeToLive) {
+        long now = 0;
+        if (timerWheel != null) {
+            now = now();
+            timerWheel.advance(now, expireCallback);
+        }
+
+        CacheNode<K, V> node = cacheMap.get(key);
+        if (node != null) {
+            V oldValue = node.value;
             node.value = value;
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
             removeNode(node);
-            addToHead(node);
+            if (timerWheel != null && !(node instanceof TimedNode)) {
+                // Written before expiry was in use, swap in a node that can expire
+                node = newNode(key, value);
+                cacheMap.put(key, node);
+            }
         } else {
             if (cacheMap.size() >= maxCacheSize) {
                 // Remove least recently used node
-                CacheNode<K, V> leastUseNode = tail.prev;
-                removeNode(leastUseNode);
-                cacheMap.remove(leastUseNode.key);
+                removeEntry(tail.prev, RemovalCause.SIZE);
             }
-            CacheNode<K, V> newNode = new CacheNode<>();
-            newNode.key = key;
-            newNode.value = value;
-            cacheMap.put(key, newNode);
-            addToHead(newNode);
+            node = newNode(key, value);
+            cacheMap.put(key, node);
         }
+        addToHead(node);
+        if (node instanceof TimedNode) {
+            TimedNode<K, V> timed = (TimedNode<K, V>) node;
+            timed.timeToLive = timeToLive;
+            updateExpiry(timed, now, true);
+        }
+    }
+
+    private CacheNode<K, V> newNode(K key, V value) {
+        CacheNode<K, V> node = timerWheel != null ? new TimedNode<>() : new CacheNode<>();
+        node.key = key;
+        node.value = value;
+        return node;
     }
 
+    @Override
     public V remove(K key) {
-        if (!cacheMap.containsKey(key)) {
+        CacheNode<K, V> node = cacheMap.get(key);
+        if (node == null) {
             return null;
         }
-        CacheNode<K, V> node = cacheMap.get(key);
-        removeNode(node);
-        cacheMap.remove(key);
+        removeEntry(node, RemovalCause.EXPLICIT);
         return node.value;
     }
 
+    @Override
     public boolean containsKey(K key) {
-        return cacheMap.containsKey(key);
+        CacheNode<K, V> node = cacheMap.get(key);
+        if (node == null) {
+            return false;
+        }
+        TimedNode<K, V> timed = expiring(node);
+        if (timed != null && timed.time - now() <= 0) {
+            removeEntry(node, RemovalCause.EXPIRED);
+            return false;
+        }
+        return true;
     }
 
+    @Override
     public int size() {
         return cacheMap.size();
     }
 
+    @Override
     public void clear() {
+        for (CacheNode<K, V> node = head.next; node != tail; node = node.next) {
+            notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        }
         cacheMap.clear();
         head.next = tail;
         tail.prev = head;
+        if (timerWheel != null) {
+            timerWheel.clear();
+        }
+    }
+
+    // Drops every expired entry
+    public void cleanUp() {
+        if (timerWheel != null) {
+            timerWheel.advance(now(), expireCallback);
+        }
+    }
+
+    private void updateExpiry(TimedNode<K, V> node, long now, boolean write) {
+        if (write) {
+            node.writeTime = now;
+        }
+
+        long deadline = 0;
+        boolean expires = false;
+        if (node.timeToLive > 0) {
+            deadline = node.writeTime + node.timeToLive;
+            expires = true;
+        } else {
+            if (expireAfterWriteNanos > 0) {
+                deadline = node.writeTime + expireAfterWriteNanos;
+                expires = true;
+            }
+            if (expireAfterAccessNanos > 0) {
+                long accessDeadline = now + expireAfterAccessNanos;
+                deadline = expires ? Math.min(deadline, accessDeadline) : accessDeadline;
+                expires = true;
+            }
+        }
+
+        if (expires) {
+            node.time = deadline;
+            node.expires = true;
+            timerWheel.reschedule(node);
+        } else if (node.expires) {
+            node.expires = false;
+            timerWheel.deschedule(node);
+        }
+    }
+
+    private void expire(TimedNode<K, V> node) {
+        removeEntry(node, RemovalCause.EXPIRED);
+    }
+
+    private void removeEntry(CacheNode<K, V> node, RemovalCause cause) {
+        removeNode(node);
+        cacheMap.remove(node.key);
+        TimedNode<K, V> timed = expiring(node);
+        if (timed != null) {
+            timerWheel.deschedule(timed);
+            timed.expires = false;
+        }
+        notifyRemoval(node.key, node.value, cause);
+    }
+
+    // The node as a TimedNode when it has a deadline, null otherwise
+    private static <K, V> TimedNode<K, V> expiring(CacheNode<K, V> node) {
+        if (node instanceof TimedNode) {
+            TimedNode<K, V> timed = (TimedNode<K, V>) node;
+            return timed.expires ? timed : null;
+        }
+        return null;
+    }
+
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    private void initTimerWheel() {
+        if (timerWheel == null) {
+            origin = ticker.getAsLong();
+            timerWheel = new TimerWheel<>(0);
+        }
+    }
+
+    private long now() {
+        return ticker.getAsLong() - origin;
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative.");
+        }
+        return unit.toNanos(duration);
     }
 
     private void addToHead(CacheNode<K, V> node) {
@@ -0,0 +1,322 @@
+package org.thingai.base.cache;
+
+import org.thingai.base.concurrent.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe cache that computes missing values with a {@link CacheLoader}. Concurrent misses on
+ * the same key share one in-flight load instead of each querying the source. With
+ * {@link #setRefreshAfterWrite} an entry older than the refresh interval is still returned but
+ * reloaded in the background, so hot keys are replaced before they expire.
+ */
+public class LoadingCache<K, V> {
+    static class Entry<V> {
+        final V value;
+        final long loadTime;
+
+        Entry(V value, long loadTime) {
+            this.value = value;
+            this.loadTime = loadTime;
+        }
+    }
+
+    private final ConcurrentLRUCache<K, Entry<V>> cache;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final CacheLoader<K, V> loader;
+    private final Executor executor;
+
+    private volatile long expireAfterWriteNanos;
+    private volatile long refreshAfterWriteNanos;
+    private volatile LongSupplier ticker = System::nanoTime;
+    private volatile StatsCounter statsCounter = new StatsCounter();
+    private volatile RemovalListener<K, V> removalListener;
+
+    public LoadingCache(int maxCacheSize, CacheLoader<K, V> loader) {
+        this(maxCacheSize, loader, VirtualThreads.newThreadPerTaskExecutor("LoadingCache"));
+    }
+
+    // Background refreshes run on the executor, regular loads run on the calling thread
+    public LoadingCache(int maxCacheSize, CacheLoader<K, V> loader, Executor executor) {
+        this.cache = new ConcurrentLRUCache<>(maxCacheSize);
+        this.loader = loader;
+        this.executor = executor;
+        // Removals are counted here, with the entry unwrapped for the listener
+        this.cache.setRecordStats(false);
+        this.cache.setRemovalListener((key, entry, cause) -> notifyRemoval(key, entry.value, cause));
+    }
+
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    // Zero disables
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        expireAfterWriteNanos = toNanos(duration, unit);
+    }
+
+    // Zero disables, should be shorter than the expire-after-write time to be useful
+    public void setRefreshAfterWrite(long duration, TimeUnit unit) {
+        refreshAfterWriteNanos = toNanos(duration, unit);
+    }
+
+    public void setTicker(LongSupplier ticker) {
+        this.ticker = ticker;
+    }
+
+    // Cached value if present and fresh, null otherwise, never loads
+    public V getIfPresent(K key) {
+        Entry<V> entry = cache.get(key);
+        if (entry == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        long now = ticker.getAsLong();
+        if (isExpired(entry, now)) {
+            cache.remove(key, RemovalCause.EXPIRED);
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        refreshIfStale(key, entry, now);
+        return entry.value;
+    }
+
+    public V get(K key) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return join(load(key));
+    }
+
+    /**
+     * Returns the values of all keys that exist, in iteration order. Keys that are neither cached nor
+     * already loading are fetched with a single {@link CacheLoader#loadAll} call.
+     */
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+        Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, V> hits = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (hits.containsKey(key) || pending.containsKey(key)) {
+                continue;
+            }
+            V value = getIfPresent(key);
+            if (value != null) {
+                hits.put(key, value);
+                continue;
+            }
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+            if (existing != null) {
+                pending.put(key, existing);
+            } else {
+                if (!completeFromCache(key, created)) {
+                    owned.put(key, created);
+                }
+                pending.put(key, created);
+            }
+        }
+        if (!owned.isEmpty()) {
+            loadAll(owned);
+        }
+
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = hits.get(key);
+            if (value == null && pending.containsKey(key)) {
+                value = join(pending.get(key));
+            }
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    // Reloads in the background, readers keep getting the current value until it completes
+    public CompletableFuture<V> refresh(K key) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> runLoad(key, created));
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, new Entry<>(value, ticker.getAsLong()));
+    }
+
+    // A load or refresh already running for the key completes, but does not cache its value
+    public void invalidate(K key) {
+        inFlight.remove(key);
+        cache.remove(key);
+    }
+
+    public void invalidateAll() {
+        inFlight.clear();
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private CompletableFuture<V> load(K key) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (!completeFromCache(key, created)) {
+            runLoad(key, created);
+        }
+        return created;
+    }
+
+    // A load may have finished between the miss and claiming the key
+    private boolean completeFromCache(K key, CompletableFuture<V> future) {
+        Entry<V> entry = cache.get(key);
+        if (entry == null || isExpired(entry, ticker.getAsLong())) {
+            return false;
+        }
+        future.complete(entry.value);
+        inFlight.remove(key, future);
+        return true;
+    }
+
+    private void runLoad(K key, CompletableFuture<V> future) {
+        long start = ticker.getAsLong();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Throwable t) {
+            statsCounter.recordLoadFailure(ticker.getAsLong() - start);
+            inFlight.remove(key, future);
+            future.completeExceptionally(t);
+            return;
+        }
+        long now = ticker.getAsLong();
+        statsCounter.recordLoadSuccess(now - start);
+        complete(key, future, value, now);
+    }
+
+    /**
+     * Caches a loaded value unless the load lost the key to {@link #invalidate} meanwhile. The value
+     * is cached before the in-flight entry goes away, so a caller arriving in between finds it
+     * instead of loading again.
+     */
+    private void complete(K key, CompletableFuture<V> future, V value, long now) {
+        if (inFlight.get(key) == future) {
+            if (value != null) {
+                Entry<V> entry = new Entry<>(value, now);
+                cache.put(key, entry);
+                if (!inFlight.remove(key, future)) {
+                    // Invalidated between the check and the put, the value predates the invalidation
+                    cache.remove(key, entry, RemovalCause.EXPLICIT);
+                }
+            } else {
+                cache.remove(key);
+                inFlight.remove(key, future);
+            }
+        }
+        future.complete(value);
+    }
+
+    private void loadAll(Map<K, CompletableFuture<V>> owned) {
+        long start = ticker.getAsLong();
+        Map<K, V> values;
+        try {
+            values = loader.loadAll(new ArrayList<>(owned.keySet()));
+        } catch (Throwable t) {
+            statsCounter.recordLoadFailure(ticker.getAsLong() - start);
+            for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+                inFlight.remove(entry.getKey(), entry.getValue());
+                entry.getValue().completeExceptionally(t);
+            }
+            return;
+        }
+        long now = ticker.getAsLong();
+        statsCounter.recordLoadSuccess(now - start);
+        for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+            V value = values == null ? null : values.get(entry.getKey());
+            if (value != null) {
+                complete(entry.getKey(), entry.getValue(), value, now);
+            } else {
+                // Missing from the result, nothing cached
+                inFlight.remove(entry.getKey(), entry.getValue());
+                entry.getValue().complete(null);
+            }
+        }
+    }
+
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        RemovalListener<K, V> listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(key, value, cause);
+        }
+    }
+
+    private void refreshIfStale(K key, Entry<V> entry, long now) {
+        long refreshAfter = refreshAfterWriteNanos;
+        if (refreshAfter > 0 && now - entry.loadTime >= refreshAfter && !inFlight.containsKey(key)) {
+            refresh(key);
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        long expireAfter = expireAfterWriteNanos;
+        return expireAfter > 0 && now - entry.loadTime >= expireAfter;
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheLoaderException(e);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheLoaderException(cause);
+        }
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Duration must not be negative.");
+        }
+        return unit.toNanos(duration);
+    }
+}
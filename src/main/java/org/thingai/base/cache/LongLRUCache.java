@@ -0,0 +1,212 @@
+package org.thingai.base.cache;
+
+import java.util.Arrays;
+
+/**
+ * LRU cache keyed by primitive {@code long}, e.g. auto increment ids. Entries live in parallel
+ * arrays sized once at construction: keys, values and prev/next indexes for the recency list,
+ * found through an open addressing table with linear probing and backward shift deletion. Get,
+ * put and remove allocate nothing once constructed. Not thread-safe, same as {@link LRUCache}.
+ * {@link IntLRUCache} is this cache with the keys widened.
+ */
+public class LongLRUCache<V> {
+    private static final int NONE = -1;
+
+    private final int maxCacheSize;
+    private final long[] keys;
+    private final Object[] values;
+    private final int[] prev;
+    private final int[] next;
+    // Entry index + 1 per slot, 0 is empty
+    private final int[] table;
+    private final int mask;
+    private int head = NONE;
+    private int tail = NONE;
+    private int freeList = NONE;
+    private int allocated;
+    private int size;
+    private StatsCounter statsCounter = new StatsCounter();
+
+    public LongLRUCache(int maxCacheSize) {
+        if (maxCacheSize <= 0) {
+            throw new IllegalArgumentException("Max cache size must be positive.");
+        }
+        this.maxCacheSize = maxCacheSize;
+        this.keys = new long[maxCacheSize];
+        this.values = new Object[maxCacheSize];
+        this.prev = new int[maxCacheSize];
+        this.next = new int[maxCacheSize];
+        // Load factor of at most one half keeps probe sequences short
+        int tableSize = Integer.highestOneBit(Math.max(2, maxCacheSize) * 2 - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = findSlot(key);
+        if (slot == NONE) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        int index = table[slot] - 1;
+        moveToHead(index);
+        return (V) values[index];
+    }
+
+    public void put(long key, V value) {
+        int slot = findSlot(key);
+        if (slot != NONE) {
+            int index = table[slot] - 1;
+            values[index] = value;
+            moveToHead(index);
+            statsCounter.recordRemoval(RemovalCause.REPLACED);
+            return;
+        }
+
+        int index;
+        if (size >= maxCacheSize) {
+            // Reuse the least recently used entry
+            index = tail;
+            deleteSlot(findSlot(keys[index]));
+            unlink(index);
+            size--;
+            statsCounter.recordRemoval(RemovalCause.SIZE);
+        } else if (freeList != NONE) {
+            index = freeList;
+            freeList = next[index];
+        } else {
+            index = allocated++;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        addToHead(index);
+        insertSlot(key, index);
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = findSlot(key);
+        if (slot == NONE) {
+            return null;
+        }
+        int index = table[slot] - 1;
+        V value = (V) values[index];
+        deleteSlot(slot);
+        unlink(index);
+        values[index] = null;
+        next[index] = freeList;
+        freeList = index;
+        size--;
+        statsCounter.recordRemoval(RemovalCause.EXPLICIT);
+        return value;
+    }
+
+    public boolean containsKey(long key) {
+        return findSlot(key) != NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            statsCounter.recordRemoval(RemovalCause.EXPLICIT);
+        }
+        Arrays.fill(table, 0);
+        Arrays.fill(values, null);
+        head = NONE;
+        tail = NONE;
+        freeList = NONE;
+        allocated = 0;
+        size = 0;
+    }
+
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            if (keys[table[slot] - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private void insertSlot(long key, int index) {
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    // Shifts later entries of the probe run back so lookups never stop at a stale hole
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        int i = (slot + 1) & mask;
+        while (table[i] != 0) {
+            int home = hash(keys[table[i] - 1]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = table[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private void moveToHead(int index) {
+        if (index != head) {
+            unlink(index);
+            addToHead(index);
+        }
+    }
+
+    private void addToHead(int index) {
+        prev[index] = NONE;
+        next[index] = head;
+        if (head != NONE) {
+            prev[head] = index;
+        }
+        head = index;
+        if (tail == NONE) {
+            tail = index;
+        }
+    }
+
+    private void unlink(int index) {
+        int before = prev[index];
+        int after = next[index];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+
+    // Package-private so tests can pick keys that collide
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
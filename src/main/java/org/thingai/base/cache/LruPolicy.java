@@ -0,0 +1,45 @@
+package org.thingai.base.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class LruPolicy<K> implements EvictionPolicy<K> {
+    private final int maximumSize;
+    private final LinkedHashMap<K, Boolean> order;
+
+    public LruPolicy(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.order = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        order.get(key);
+    }
+
+    @Override
+    public K recordInsert(K key) {
+        order.put(key, Boolean.TRUE);
+        if (order.size() <= maximumSize) {
+            return null;
+        }
+        // Access ordered, so the first entry is the least recently used
+        Iterator<K> eldest = order.keySet().iterator();
+        K victim = eldest.next();
+        eldest.remove();
+        return victim;
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,318 @@
+package org.thingai.base.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cache tier that keeps serialized values in a direct {@link ByteBuffer} outside the Java heap.
+ * Values are appended to a ring shaped log and the oldest records are evicted when it is full
+ * (FIFO by write time, put an {@link LRUCache} in front for recency, see {@link TieredCache}).
+ * The on-heap index is a chained hash table over parallel primitive arrays, so an entry costs its
+ * key object and a few array slots instead of a node per entry. Replaced and removed values stay
+ * in the log until the eviction pointer passes them. Not thread-safe, same as {@link LRUCache}.
+ */
+public class OffHeapCache<K, V> implements Cache<K, V> {
+    // Record layout: entry id, value length, value bytes
+    private static final int HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+    private static final int NONE = -1;
+
+    private final ByteBuffer log;
+    private final int capacity;
+    private final Serializer<V> serializer;
+    // Positions only grow, the offset in the buffer is position % capacity
+    private long writePosition;
+    private long evictPosition;
+
+    private int[] buckets;
+    private int[] nextInBucket;
+    private int[] hashes;
+    private Object[] keys;
+    private long[] positions;
+    private int freeList = NONE;
+    private int allocated;
+    private int size;
+
+    private StatsCounter statsCounter = new StatsCounter();
+    private RemovalListener<K, V> removalListener;
+
+    public OffHeapCache(int capacityBytes, Serializer<V> serializer) {
+        if (capacityBytes < HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity must be at least " + HEADER_SIZE + " bytes.");
+        }
+        this.log = ByteBuffer.allocateDirect(capacityBytes);
+        this.capacity = capacityBytes;
+        this.serializer = serializer;
+
+        this.buckets = new int[16];
+        Arrays.fill(buckets, NONE);
+        this.nextInBucket = new int[16];
+        this.hashes = new int[16];
+        this.keys = new Object[16];
+        this.positions = new long[16];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Bytes between the oldest and newest record, dead records included
+    public long getUsedBytes() {
+        return writePosition - evictPosition;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    @Override
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    @Override
+    public V get(K key) {
+        int id = find(key);
+        if (id == NONE) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return read(id);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        byte[] data = serializer.serialize(value);
+        int recordSize = HEADER_SIZE + data.length;
+        if (recordSize > capacity) {
+            // Can never fit: the old value is replaced rather than served stale, the new one is
+            // evicted right away, so a demotion from a tier in front does not vanish unreported
+            int id = find(key);
+            if (id != NONE) {
+                removeEntry(id, RemovalCause.REPLACED);
+            }
+            statsCounter.recordRemoval(RemovalCause.SIZE);
+            if (removalListener != null) {
+                removalListener.onRemoval(key, value, RemovalCause.SIZE);
+            }
+            return;
+        }
+
+        // Reserving may evict this key's old record, look it up afterwards
+        long position = reserve(recordSize);
+        int id = find(key);
+        if (id != NONE) {
+            statsCounter.recordRemoval(RemovalCause.REPLACED);
+            if (removalListener != null) {
+                removalListener.onRemoval(key, read(id), RemovalCause.REPLACED);
+            }
+        } else {
+            id = allocate(key);
+        }
+
+        int offset = offset(position);
+        log.putInt(offset, id);
+        log.putInt(offset + 4, data.length);
+        ByteBuffer target = log.duplicate();
+        target.position(offset + HEADER_SIZE);
+        target.put(data);
+        positions[id] = position;
+    }
+
+    @Override
+    public V remove(K key) {
+        int id = find(key);
+        if (id == NONE) {
+            return null;
+        }
+        V value = read(id);
+        unlink(id);
+        statsCounter.recordRemoval(RemovalCause.EXPLICIT);
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, RemovalCause.EXPLICIT);
+        }
+        return value;
+    }
+
+    // Drops the entry without reading it back or reporting a removal, for moving it to another tier
+    boolean discard(K key) {
+        int id = find(key);
+        if (id == NONE) {
+            return false;
+        }
+        unlink(id);
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key) != NONE;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        for (int id = 0; id < allocated; id++) {
+            if (keys[id] != null) {
+                statsCounter.recordRemoval(RemovalCause.EXPLICIT);
+                if (removalListener != null) {
+                    removalListener.onRemoval((K) keys[id], read(id), RemovalCause.EXPLICIT);
+                }
+            }
+        }
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(keys, null);
+        freeList = NONE;
+        allocated = 0;
+        size = 0;
+        writePosition = 0;
+        evictPosition = 0;
+    }
+
+    // Makes room for a record that does not wrap around the end of the buffer and returns its position
+    private long reserve(int recordSize) {
+        long position = writePosition;
+        int remaining = capacity - offset(position);
+        if (remaining < recordSize) {
+            position += remaining;
+        }
+        long end = position + recordSize;
+        while (evictPosition < writePosition && end - evictPosition > capacity) {
+            evictOldest();
+        }
+        if (evictPosition >= writePosition) {
+            // Log is empty, start the next record fresh
+            evictPosition = position;
+        } else if (position != writePosition && remaining >= 4) {
+            log.putInt(offset(writePosition), PADDING);
+        }
+        writePosition = end;
+        return position;
+    }
+
+    private void evictOldest() {
+        int offset = offset(evictPosition);
+        int remaining = capacity - offset;
+        if (remaining < HEADER_SIZE) {
+            evictPosition += remaining;
+            return;
+        }
+        int id = log.getInt(offset);
+        if (id == PADDING) {
+            evictPosition += remaining;
+            return;
+        }
+        int length = log.getInt(offset + 4);
+        // Records of replaced or removed entries are dead, only the current one evicts its entry
+        if (keys[id] != null && positions[id] == evictPosition) {
+            removeEntry(id, RemovalCause.SIZE);
+        }
+        evictPosition += HEADER_SIZE + length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeEntry(int id, RemovalCause cause) {
+        K key = (K) keys[id];
+        V value = removalListener != null ? read(id) : null;
+        unlink(id);
+        statsCounter.recordRemoval(cause);
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+
+    private V read(int id) {
+        int offset = offset(positions[id]);
+        int length = log.getInt(offset + 4);
+        ByteBuffer data = log.duplicate();
+        data.limit(offset + HEADER_SIZE + length);
+        data.position(offset + HEADER_SIZE);
+        return serializer.deserialize(data.slice());
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity);
+    }
+
+    private int find(Object key) {
+        int hash = spread(key.hashCode());
+        for (int id = buckets[hash & (buckets.length - 1)]; id != NONE; id = nextInBucket[id]) {
+            if (hashes[id] == hash && keys[id].equals(key)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    private int allocate(K key) {
+        int id;
+        if (freeList != NONE) {
+            id = freeList;
+            freeList = nextInBucket[id];
+        } else {
+            if (allocated == keys.length) {
+                int length = keys.length * 2;
+                nextInBucket = Arrays.copyOf(nextInBucket, length);
+                hashes = Arrays.copyOf(hashes, length);
+                keys = Arrays.copyOf(keys, length);
+                positions = Arrays.copyOf(positions, length);
+            }
+            id = allocated++;
+        }
+        int hash = spread(key.hashCode());
+        keys[id] = key;
+        hashes[id] = hash;
+        int bucket = hash & (buckets.length - 1);
+        nextInBucket[id] = buckets[bucket];
+        buckets[bucket] = id;
+        if (++size > buckets.length * 3 / 4) {
+            rehash(buckets.length * 2);
+        }
+        return id;
+    }
+
+    private void unlink(int id) {
+        int bucket = hashes[id] & (buckets.length - 1);
+        if (buckets[bucket] == id) {
+            buckets[bucket] = nextInBucket[id];
+        } else {
+            int previous = buckets[bucket];
+            while (nextInBucket[previous] != id) {
+                previous = nextInBucket[previous];
+            }
+            nextInBucket[previous] = nextInBucket[id];
+        }
+        keys[id] = null;
+        nextInBucket[id] = freeList;
+        freeList = id;
+        size--;
+    }
+
+    private void rehash(int length) {
+        buckets = new int[length];
+        Arrays.fill(buckets, NONE);
+        for (int id = 0; id < allocated; id++) {
+            if (keys[id] != null) {
+                int bucket = hashes[id] & (length - 1);
+                nextInBucket[id] = buckets[bucket];
+                buckets[bucket] = id;
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
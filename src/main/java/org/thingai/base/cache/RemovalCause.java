@@ -0,0 +1,16 @@
+package org.thingai.base.cache;
+
+public enum RemovalCause {
+    // Removed by remove, invalidate or clear
+    EXPLICIT,
+    // Value overwritten by a put for the same key
+    REPLACED,
+    // Time to live ran out
+    EXPIRED,
+    // Evicted to stay under the maximum size
+    SIZE;
+
+    public boolean wasEvicted() {
+        return this == EXPIRED || this == SIZE;
+    }
+}
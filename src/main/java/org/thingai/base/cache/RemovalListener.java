@@ -0,0 +1,10 @@
+package org.thingai.base.cache;
+
+/**
+ * Notified when an entry leaves a cache. Called on the thread that caused the removal, after the
+ * cache's own bookkeeping is done, so it should be quick and must not fail.
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+    void onRemoval(K key, V value, RemovalCause cause);
+}
@@ -0,0 +1,82 @@
+package org.thingai.base.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes values for {@link OffHeapCache}. {@link #deserialize} gets a buffer positioned at the
+ * start of the value with exactly its bytes remaining; it must not keep a reference to it, the
+ * memory is reused once the entry is evicted.
+ */
+public interface Serializer<V> {
+    byte[] serialize(V value);
+
+    V deserialize(ByteBuffer data);
+
+    static Serializer<String> string() {
+        return new Serializer<String>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(ByteBuffer data) {
+                return StandardCharsets.UTF_8.decode(data).toString();
+            }
+        };
+    }
+
+    static Serializer<byte[]> bytes() {
+        return new Serializer<byte[]>() {
+            @Override
+            public byte[] serialize(byte[] value) {
+                return value;
+            }
+
+            @Override
+            public byte[] deserialize(ByteBuffer data) {
+                byte[] value = new byte[data.remaining()];
+                data.get(value);
+                return value;
+            }
+        };
+    }
+
+    // Standard Java serialization, convenient but slow and large, prefer a dedicated encoding
+    static <V extends Serializable> Serializer<V> java() {
+        return new Serializer<V>() {
+            @Override
+            public byte[] serialize(V value) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V deserialize(ByteBuffer data) {
+                byte[] value = new byte[data.remaining()];
+                data.get(value);
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value))) {
+                    return (V) in.readObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
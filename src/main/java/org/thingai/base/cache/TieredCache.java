@@ -0,0 +1,131 @@
+package org.thingai.base.cache;
+
+import java.util.HashMap;
+
+/**
+ * Two level cache: a small on-heap {@link LRUCache} (L1) in front of a large {@link OffHeapCache}
+ * (L2). Entries evicted from L1 for size are demoted to L2 and promoted back on their next hit, so
+ * each key lives in exactly one tier and only the hot set adds to GC pressure. The removal
+ * listener and stats describe the cache as a whole, demotions and promotions are not removals.
+ */
+public class TieredCache<K, V> implements Cache<K, V> {
+    private final LRUCache<K, V> l1;
+    private final OffHeapCache<K, V> l2;
+    private StatsCounter statsCounter = new StatsCounter();
+    private RemovalListener<K, V> removalListener;
+    private boolean promoting;
+
+    public TieredCache(int l1MaxSize, int l2CapacityBytes, Serializer<V> serializer) {
+        this(new LRUCache<>(l1MaxSize, new HashMap<>()), new OffHeapCache<>(l2CapacityBytes, serializer));
+    }
+
+    public TieredCache(LRUCache<K, V> l1, OffHeapCache<K, V> l2) {
+        this.l1 = l1;
+        this.l2 = l2;
+        l1.setRemovalListener((key, value, cause) -> {
+            if (cause == RemovalCause.SIZE) {
+                l2.put(key, value);
+            } else {
+                notifyRemoval(key, value, cause);
+            }
+        });
+        l2.setRemovalListener((key, value, cause) -> {
+            if (!promoting) {
+                notifyRemoval(key, value, cause);
+            }
+        });
+    }
+
+    public LRUCache<K, V> getL1() {
+        return l1;
+    }
+
+    public OffHeapCache<K, V> getL2() {
+        return l2;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void setRecordStats(boolean recordStats) {
+        statsCounter = recordStats ? new StatsCounter() : StatsCounter.disabled();
+    }
+
+    @Override
+    public void setRemovalListener(RemovalListener<K, V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    @Override
+    public V get(K key) {
+        V value = l1.get(key);
+        if (value != null) {
+            statsCounter.recordHits(1);
+            return value;
+        }
+        value = l2.get(key);
+        if (value == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        promote(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (l2.containsKey(key)) {
+            // Stays exclusive, the L2 copy is replaced by the new L1 value
+            promoting = true;
+            V oldValue;
+            try {
+                oldValue = l2.remove(key);
+            } finally {
+                promoting = false;
+            }
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+        }
+        l1.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        V value = l1.remove(key);
+        if (value == null) {
+            value = l2.remove(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return l1.containsKey(key) || l2.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return l1.size() + l2.size();
+    }
+
+    @Override
+    public void clear() {
+        l1.clear();
+        l2.clear();
+    }
+
+    private void promote(K key, V value) {
+        l2.discard(key);
+        l1.put(key, value);
+    }
+
+    private void notifyRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener != null) {
+            removalListener.onRemoval(key, value, cause);
+        }
+    }
+}
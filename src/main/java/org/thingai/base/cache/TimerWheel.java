@@ -0,0 +1,184 @@
+package org.thingai.base.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel for entry expiry. Levels tick roughly every second, minute, hour and
+ * day; an entry is hashed into the coarsest level that still resolves its deadline and cascades
+ * down as time passes. Scheduling and descheduling are O(1), {@link #advance} only visits the
+ * buckets whose time has come. Times are relative nanoseconds and must not be negative.
+ */
+class TimerWheel<N extends TimerWheel.Node> {
+    // Implemented by the entries themselves, so scheduling needs no wrapper object
+    interface Node {
+        long getTime();
+        Node getPrevInWheel();
+        void setPrevInWheel(Node prev);
+        Node getNextInWheel();
+        void setNextInWheel(Node next);
+    }
+
+    private static final class Sentinel implements Node {
+        Node prev = this;
+        Node next = this;
+
+        @Override
+        public long getTime() {
+            return 0;
+        }
+
+        @Override
+        public Node getPrevInWheel() {
+            return prev;
+        }
+
+        @Override
+        public void setPrevInWheel(Node prev) {
+            this.prev = prev;
+        }
+
+        @Override
+        public Node getNextInWheel() {
+            return next;
+        }
+
+        @Override
+        public void setNextInWheel(Node next) {
+            this.next = next;
+        }
+    }
+
+    static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    static final long[] SPANS = {
+            ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+            ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+            ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),   // 1.22h
+            ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),    // 1.63d
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+    };
+    static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    private final Node[][] wheel;
+    private long nanos;
+
+    TimerWheel(long nanos) {
+        this.nanos = nanos;
+        this.wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = new Sentinel();
+            }
+        }
+    }
+
+    void schedule(N node) {
+        Node sentinel = findBucket(node.getTime());
+        Node last = sentinel.getPrevInWheel();
+        node.setPrevInWheel(last);
+        node.setNextInWheel(sentinel);
+        last.setNextInWheel(node);
+        sentinel.setPrevInWheel(node);
+    }
+
+    void reschedule(N node) {
+        deschedule(node);
+        schedule(node);
+    }
+
+    void deschedule(N node) {
+        Node next = node.getNextInWheel();
+        if (next != null) {
+            Node prev = node.getPrevInWheel();
+            prev.setNextInWheel(next);
+            next.setPrevInWheel(prev);
+            node.setPrevInWheel(null);
+            node.setNextInWheel(null);
+        }
+    }
+
+    // Moves the clock forward, expired nodes are unlinked before they are handed to the consumer
+    void advance(long currentTime, Consumer<N> expired) {
+        long previousTime = nanos;
+        if (currentTime - previousTime <= 0) {
+            return;
+        }
+        nanos = currentTime;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = currentTime >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(i, previousTicks, delta, expired);
+        }
+    }
+
+    void clear() {
+        for (Node[] buckets : wheel) {
+            for (Node sentinel : buckets) {
+                sentinel.setPrevInWheel(sentinel);
+                sentinel.setNextInWheel(sentinel);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(int level, long previousTicks, long delta, Consumer<N> expired) {
+        Node[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        // The bucket of the previous tick is visited again, it may hold deadlines later in that tick
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+        for (int i = start; i < end; i++) {
+            Node sentinel = buckets[i & mask];
+            Node node = sentinel.getNextInWheel();
+            sentinel.setPrevInWheel(sentinel);
+            sentinel.setNextInWheel(sentinel);
+            while (node != sentinel) {
+                Node next = node.getNextInWheel();
+                node.setPrevInWheel(null);
+                node.setNextInWheel(null);
+                if (node.getTime() - nanos > 0) {
+                    // Not due yet, cascade into a finer level
+                    schedule((N) node);
+                } else {
+                    expired.accept((N) node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private Node findBucket(long time) {
+        long duration = time - nanos;
+        if (duration < 0) {
+            // Already due, the current bucket is the next one visited
+            time = nanos;
+            duration = 0;
+        }
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    private static long ceilingPowerOfTwo(long x) {
+        return 1L << -Long.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,179 @@
+package org.thingai.base.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Window TinyLFU. New keys land in a small LRU window (1% of the size); when the window overflows
+ * its oldest key competes with the oldest key of the main segment and the one with the higher
+ * {@link FrequencySketch} estimate stays. The main segment is a segmented LRU where a second hit
+ * promotes a key from probation to protected, so a one-off scan only ever churns the window and
+ * probation.
+ */
+public class WindowTinyLfuPolicy<K> implements EvictionPolicy<K> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    static class Node<K> {
+        final K key;
+        int queue;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+
+    static class Deque<K> {
+        final Node<K> head = new Node<>(null);
+        final Node<K> tail = new Node<>(null);
+        int size;
+
+        Deque() {
+            head.next = tail;
+            tail.prev = head;
+        }
+
+        void addFirst(Node<K> node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+            size++;
+        }
+
+        void remove(Node<K> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            size--;
+        }
+
+        Node<K> last() {
+            return tail.prev == head ? null : tail.prev;
+        }
+
+        void clear() {
+            head.next = tail;
+            tail.prev = head;
+            size = 0;
+        }
+    }
+
+    private final int maximumSize;
+    private final int maxWindow;
+    private final int maxProtected;
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private final Deque<K> window = new Deque<>();
+    private final Deque<K> probation = new Deque<>();
+    private final Deque<K> protectedQueue = new Deque<>();
+    private final FrequencySketch<K> sketch;
+
+    public WindowTinyLfuPolicy(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.maxWindow = Math.max(1, maximumSize / 100);
+        this.maxProtected = (int) ((maximumSize - maxWindow) * 0.8);
+        this.sketch = new FrequencySketch<>(maximumSize);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        sketch.increment(key);
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                window.addFirst(node);
+                break;
+            case PROBATION:
+                // Second hit, promote and demote the oldest protected key if over budget
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addFirst(node);
+                if (protectedQueue.size > maxProtected) {
+                    Node<K> demoted = protectedQueue.last();
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addFirst(demoted);
+                }
+                break;
+            default:
+                protectedQueue.remove(node);
+                protectedQueue.addFirst(node);
+                break;
+        }
+    }
+
+    @Override
+    public K recordInsert(K key) {
+        sketch.increment(key);
+        Node<K> node = new Node<>(key);
+        node.queue = WINDOW;
+        nodes.put(key, node);
+        window.addFirst(node);
+        if (window.size <= maxWindow) {
+            return null;
+        }
+
+        // Window overflow, its oldest key moves to probation as the admission candidate
+        Node<K> candidate = window.last();
+        window.remove(candidate);
+        candidate.queue = PROBATION;
+        probation.addFirst(candidate);
+        if (nodes.size() <= maximumSize) {
+            return null;
+        }
+
+        Node<K> victim = probation.last();
+        if (victim == candidate) {
+            victim = protectedQueue.last();
+        }
+        Node<K> evicted;
+        if (victim == null) {
+            evicted = candidate;
+        } else {
+            evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+        }
+        unlink(evicted);
+        nodes.remove(evicted.key);
+        return evicted.key;
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+        sketch.clear();
+    }
+
+    private void unlink(Node<K> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedQueue.remove(node);
+                break;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.thingai.base.config;
+
+// Called on the watcher thread after a changed config file has been swapped in
+@FunctionalInterface
+public interface ConfigListener {
+    void onConfigChanged(ServiceConfig previous, ServiceConfig current);
+}
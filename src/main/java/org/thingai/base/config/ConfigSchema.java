@@ -0,0 +1,64 @@
+package org.thingai.base.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Types of the config keys a service relies on, checked when a {@link ServiceConfig} is built.
+ * Keys may be missing, the getters fall back to their defaults then; a present value of the wrong
+ * type rejects the whole snapshot.
+ *
+ * <pre>
+ * new ConfigSchema().define("port", ConfigSchema.Type.INT).define("debug", ConfigSchema.Type.BOOLEAN);
+ * </pre>
+ */
+public final class ConfigSchema {
+    public enum Type {
+        STRING,
+        INT,
+        LONG,
+        DOUBLE,
+        BOOLEAN
+    }
+
+    private final Map<String, Type> types = new LinkedHashMap<>();
+
+    public ConfigSchema define(String key, Type type) {
+        if (key == null || type == null) {
+            throw new IllegalArgumentException("Config key and type cannot be null.");
+        }
+        types.put(key, type);
+        return this;
+    }
+
+    public Map<String, Type> getTypes() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    void validate(ServiceConfig config) {
+        for (Map.Entry<String, Type> entry : types.entrySet()) {
+            String key = entry.getKey();
+            if (!config.contains(key)) {
+                continue;
+            }
+            // The typed getters throw IllegalArgumentException for a malformed value
+            switch (entry.getValue()) {
+                case INT:
+                    config.getInt(key, 0);
+                    break;
+                case LONG:
+                    config.getLong(key, 0);
+                    break;
+                case DOUBLE:
+                    config.getDouble(key, 0);
+                    break;
+                case BOOLEAN:
+                    config.getBoolean(key, false);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.thingai.base.config;
+
+import org.thingai.base.log.ILog;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the current {@link ServiceConfig} of a file and reloads it when the file changes. The
+ * snapshot sits in a volatile field, so {@link #get()} is a plain read on the hot path; a daemon
+ * thread waits on a {@link WatchService} for the parent directory, reparses after a short quiet
+ * period (editors often write a file in several steps) and notifies listeners when it changed.
+ */
+public class ConfigWatcher implements AutoCloseable {
+    private static final String TAG = "ConfigWatcher";
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Path file;
+    private final ConfigSchema schema;
+    private final List<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ServiceConfig current;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public ConfigWatcher(Path file) throws IOException {
+        this(file, new ConfigSchema());
+    }
+
+    // A first file that does not match the schema fails here with IllegalArgumentException
+    public ConfigWatcher(Path file, ConfigSchema schema) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.schema = schema;
+        this.current = Files.exists(this.file) ? ServiceConfig.load(this.file, schema) : ServiceConfig.empty();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public ServiceConfig get() {
+        return current;
+    }
+
+    public void addListener(ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchThread != null) {
+            return;
+        }
+        watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchThread = new Thread(this::watch, TAG + "-" + file.getFileName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Reads the file again and swaps the snapshot in if it differs. A file that fails to parse or
+     * does not match the schema keeps the previous snapshot; a deleted file is treated as empty.
+     */
+    public synchronized boolean reload() {
+        ServiceConfig next;
+        try {
+            next = Files.exists(file) ? ServiceConfig.load(file, schema) : ServiceConfig.empty();
+        } catch (IOException | IllegalArgumentException e) {
+            ILog.e(TAG, "Cannot reload " + file + ":", String.valueOf(e));
+            return false;
+        }
+        ServiceConfig previous = current;
+        if (next.equals(previous)) {
+            return false;
+        }
+        current = next;
+        for (ConfigListener listener : listeners) {
+            try {
+                listener.onConfigChanged(previous, next);
+            } catch (RuntimeException e) {
+                ILog.e(TAG, "Config listener failed:", String.valueOf(e));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            watchService = null;
+            watchThread = null;
+        }
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = pollEvents(key);
+                // Let a burst of writes settle, then fold the following events into one reload
+                while (changed && (key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    pollEvents(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean pollEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(context)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,181 @@
+package org.thingai.base.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of a properties file. Values are trimmed, and numbers and booleans are parsed
+ * once when the snapshot is built, so typed lookups never parse. Keys declared in a
+ * {@link ConfigSchema} are validated then too: a malformed value fails {@link #load} instead of a
+ * later lookup. A new snapshot replaces the whole object on reload, so readers never see a half
+ * applied change.
+ */
+public final class ServiceConfig {
+    private static final ServiceConfig EMPTY = new ServiceConfig(Collections.emptyMap());
+
+    // A value in every form it parses as, null where it does not
+    static final class Parsed {
+        final Long longValue;
+        final Double doubleValue;
+        final Boolean booleanValue;
+
+        Parsed(String value) {
+            this.longValue = parseLong(value);
+            this.doubleValue = longValue != null ? Double.valueOf(longValue) : parseDouble(value);
+            this.booleanValue = value.equalsIgnoreCase("true") ? Boolean.TRUE
+                    : value.equalsIgnoreCase("false") ? Boolean.FALSE : null;
+        }
+    }
+
+    private final Map<String, String> values;
+    private final Map<String, Parsed> parsed;
+
+    private ServiceConfig(Map<String, String> values) {
+        this.values = values;
+        Map<String, Parsed> parsed = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            parsed.put(entry.getKey(), new Parsed(entry.getValue()));
+        }
+        this.parsed = parsed;
+    }
+
+    public static ServiceConfig empty() {
+        return EMPTY;
+    }
+
+    public static ServiceConfig of(Properties properties) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key).trim());
+        }
+        return new ServiceConfig(Collections.unmodifiableMap(values));
+    }
+
+    // Throws IllegalArgumentException if a key of the schema has a value of the wrong type
+    public static ServiceConfig of(Properties properties, ConfigSchema schema) {
+        ServiceConfig config = of(properties);
+        schema.validate(config);
+        return config;
+    }
+
+    public static ServiceConfig load(Path file) throws IOException {
+        return of(read(file));
+    }
+
+    public static ServiceConfig load(Path file, ConfigSchema schema) throws IOException {
+        return of(read(file), schema);
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public String getString(String key) {
+        return values.get(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Parsed value = parsed.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        Long longValue = value.longValue;
+        if (longValue == null || longValue != longValue.intValue()) {
+            throw new IllegalArgumentException("Config " + key + " is not an int: " + values.get(key));
+        }
+        return longValue.intValue();
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Parsed value = parsed.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.longValue == null) {
+            throw new IllegalArgumentException("Config " + key + " is not a long: " + values.get(key));
+        }
+        return value.longValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Parsed value = parsed.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.doubleValue == null) {
+            throw new IllegalArgumentException("Config " + key + " is not a number: " + values.get(key));
+        }
+        return value.doubleValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Parsed value = parsed.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.booleanValue == null) {
+            throw new IllegalArgumentException("Config " + key + " is not a boolean: " + values.get(key));
+        }
+        return value.booleanValue;
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+    public Map<String, String> toMap() {
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ServiceConfig && values.equals(((ServiceConfig) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceConfig" + values;
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Double parseDouble(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
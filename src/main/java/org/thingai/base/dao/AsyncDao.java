@@ -0,0 +1,177 @@
+package org.thingai.base.dao;
+
+import org.thingai.base.concurrent.VirtualThreads;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Non-blocking facade over any {@link Dao}. Each call runs on its own (virtual) thread, at most
+ * {@code maxConcurrency} calls touch the Dao at once, which should match its connection pool.
+ * Calls over the limit wait in a queue, not on a thread, and are handed to the executor as running
+ * ones finish. Cancelling a returned future interrupts the call if it is running and drops it if
+ * it is still waiting.
+ */
+public class AsyncDao implements AutoCloseable {
+    static class TaskFuture<R> extends CompletableFuture<R> {
+        volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> running = task;
+            if (cancelled && running != null) {
+                running.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+
+    private final Dao dao;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final boolean ownsExecutor;
+
+    public AsyncDao(Dao dao, int maxConcurrency) {
+        this(dao, maxConcurrency, VirtualThreads.newThreadPerTaskExecutor("AsyncDao"), true);
+    }
+
+    public AsyncDao(Dao dao, int maxConcurrency, ExecutorService executor) {
+        this(dao, maxConcurrency, executor, false);
+    }
+
+    private AsyncDao(Dao dao, int maxConcurrency, ExecutorService executor, boolean ownsExecutor) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency must be positive.");
+        }
+        this.dao = dao;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency);
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public Dao getDao() {
+        return dao;
+    }
+
+    public <T> CompletableFuture<T[]> readAll(Class<T> clazz) {
+        return submit(() -> dao.readAll(clazz));
+    }
+
+    public <T> CompletableFuture<Void> insertOrUpdate(T t) {
+        return run(() -> dao.insertOrUpdate(t));
+    }
+
+    public <T> CompletableFuture<Void> insertOrUpdate(Class<T> clazz, T t) {
+        return run(() -> dao.insertOrUpdate(clazz, t));
+    }
+
+    public <T> CompletableFuture<Void> insertBatch(T[] t) {
+        return run(() -> dao.insertBatch(t));
+    }
+
+    public <T> CompletableFuture<Void> insertBatch(Iterable<T> items) {
+        return run(() -> dao.insertBatch(items));
+    }
+
+    public <T, K> CompletableFuture<Void> delete(Class<T> clazz, K id) {
+        return run(() -> dao.delete(clazz, id));
+    }
+
+    public <T> CompletableFuture<Void> delete(T t) {
+        return run(() -> dao.delete(t));
+    }
+
+    public <T> CompletableFuture<Void> deleteByColumn(Class<T> clazz, String column, String value) {
+        return run(() -> dao.deleteByColumn(clazz, column, value));
+    }
+
+    public <T> CompletableFuture<Void> deleteAll(Class<T> clazz) {
+        return run(() -> dao.deleteAll(clazz));
+    }
+
+    public <T, K> CompletableFuture<T> findById(Class<T> clazz, K id) {
+        return submit(() -> dao.findById(clazz, id));
+    }
+
+    public <T> CompletableFuture<T[]> query(Class<T> clazz, String column, String value) {
+        return submit(() -> dao.query(clazz, column, value));
+    }
+
+    public <T> CompletableFuture<T[]> query(Class<T> clazz, String[] column, String[] value) {
+        return submit(() -> dao.query(clazz, column, value));
+    }
+
+    public <T> CompletableFuture<T[]> query(Class<T> clazz, String query) {
+        return submit(() -> dao.query(clazz, query));
+    }
+
+    public <T> CompletableFuture<T[]> query(Query<T> query) {
+        return submit(() -> dao.query(query));
+    }
+
+    public CompletableFuture<Map<String, Object>[]> queryRaw(String query) {
+        return submit(() -> dao.queryRaw(query));
+    }
+
+    private CompletableFuture<Void> run(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // The permit is taken before the call goes to the executor, a cached pool on older runtimes
+    // would otherwise start a thread per waiting call
+    private <R> CompletableFuture<R> submit(Callable<R> task) {
+        TaskFuture<R> future = new TaskFuture<>();
+        waiting.add(() -> {
+            // Cancelled while waiting
+            if (future.isDone()) {
+                permits.release();
+                return;
+            }
+            try {
+                future.task = executor.submit(() -> {
+                    try {
+                        if (!future.isDone()) {
+                            future.complete(task.call());
+                        }
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        permits.release();
+                        startWaiting();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                future.completeExceptionally(e);
+            }
+        });
+        startWaiting();
+        return future;
+    }
+
+    // Called after every enqueue and every release, so a waiting call never misses a free permit
+    private void startWaiting() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable start = waiting.poll();
+            if (start == null) {
+                permits.release();
+            } else {
+                start.run();
+            }
+        }
+    }
+
+    // Shuts down the executor if this facade created it, the wrapped Dao is left open
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.thingai.base.dao;
+
+/**
+ * Thrown by {@link Dao#insertBatch} when a chunk fails. Chunks before {@link #getChunkIndex()} are
+ * committed, the failed chunk is rolled back and nothing after it is written.
+ */
+public class BatchInsertException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int chunkIndex;
+    private final long committedRows;
+
+    public BatchInsertException(int chunkIndex, long committedRows, Throwable cause) {
+        super("Batch insert failed in chunk " + chunkIndex + " after " + committedRows + " committed rows.", cause);
+        this.chunkIndex = chunkIndex;
+        this.committedRows = committedRows;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public long getCommittedRows() {
+        return committedRows;
+    }
+}
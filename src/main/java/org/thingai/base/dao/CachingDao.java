@@ -0,0 +1,388 @@
+package org.thingai.base.dao;
+
+import org.thingai.base.cache.CacheStats;
+import org.thingai.base.cache.ConcurrentLRUCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache in front of another {@link Dao}. {@link #findById} results are cached per
+ * entity, results of the typed query methods are cached per table and dropped by any write to that
+ * table. Raw SQL is never cached; statements that are not a SELECT invalidate every known table
+ * they mention. Cached entities are shared between callers and must not be modified in place.
+ */
+public class CachingDao implements Dao {
+    // Per table write counter and bulk invalidation epoch
+    static class TableState {
+        final AtomicLong modCount = new AtomicLong();
+        // Finds the table name in raw SQL, compiled once instead of per statement
+        final Pattern mention;
+        volatile long epoch;
+
+        TableState(String tableName) {
+            this.mention = Pattern.compile("\\b" + Pattern.quote(tableName) + "\\b", Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    static class Cached {
+        final Object value;
+        final long version;
+
+        Cached(Object value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    private static final Object MISSING = new Object();
+    private static final Pattern READ_ONLY = Pattern.compile("^\\s*(SELECT|WITH|EXPLAIN)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Dao dao;
+    private final ConcurrentLRUCache<List<Object>, Cached> entityCache;
+    private final ConcurrentLRUCache<List<Object>, Cached> queryCache;
+    private final Map<String, TableState> tables = new ConcurrentHashMap<>();
+    private volatile int maxCachedRows = 1000;
+
+    public CachingDao(Dao dao, int maxEntities, int maxQueries) {
+        this.dao = dao;
+        this.entityCache = new ConcurrentLRUCache<>(maxEntities);
+        this.queryCache = new ConcurrentLRUCache<>(maxQueries);
+    }
+
+    public Dao getDao() {
+        return dao;
+    }
+
+    public int getMaxCachedRows() {
+        return maxCachedRows;
+    }
+
+    // Query results with more rows are returned but not cached
+    public void setMaxCachedRows(int maxCachedRows) {
+        this.maxCachedRows = maxCachedRows;
+    }
+
+    public CacheStats getEntityStats() {
+        return entityCache.stats();
+    }
+
+    public CacheStats getQueryStats() {
+        return queryCache.stats();
+    }
+
+    public void invalidate(Class<?> clazz) {
+        invalidateTable(EntityMetadata.of(clazz).getTableName());
+    }
+
+    public void invalidateAll() {
+        for (TableState state : tables.values()) {
+            state.modCount.incrementAndGet();
+            state.epoch++;
+        }
+        entityCache.clear();
+        queryCache.clear();
+    }
+
+    @Override
+    public void initDao(Class<?>[] classes) {
+        dao.initDao(classes);
+        for (Class<?> clazz : classes) {
+            table(EntityMetadata.of(clazz).getTableName());
+        }
+    }
+
+    @Override
+    public <T, K> T findById(Class<T> clazz, K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Cannot find with null id.");
+        }
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        TableState state = table(metadata.getTableName());
+        List<Object> key = Arrays.asList(clazz, normalizeId(metadata, id));
+
+        Cached cached = entityCache.get(key);
+        if (cached != null && cached.version == state.epoch) {
+            return cached.value == MISSING ? null : clazz.cast(cached.value);
+        }
+
+        // A write during the read may have raced it, only cache when the table was left alone
+        long modCount = state.modCount.get();
+        long epoch = state.epoch;
+        T value = dao.findById(clazz, id);
+        if (state.modCount.get() == modCount) {
+            Cached entry = new Cached(value == null ? MISSING : value, epoch);
+            entityCache.put(key, entry);
+            // A write between the check and the put may have removed the key before this landed
+            if (state.modCount.get() != modCount) {
+                entityCache.remove(key, entry);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public <T> T[] readAll(Class<T> clazz) {
+        return cachedQuery(clazz, Arrays.asList(clazz, "readAll"), () -> dao.readAll(clazz));
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String column, String value) {
+        return cachedQuery(clazz, Arrays.asList(clazz, "column", column, value), () -> dao.query(clazz, column, value));
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String[] column, String[] value) {
+        if (column == null || value == null) {
+            throw new IllegalArgumentException("Cannot read with null column or value.");
+        }
+        List<Object> key = new ArrayList<>();
+        key.add(clazz);
+        key.add("columns");
+        key.add(Arrays.asList(column));
+        key.add(Arrays.asList(value));
+        return cachedQuery(clazz, key, () -> dao.query(clazz, column, value));
+    }
+
+    @Override
+    public <T> T[] query(Class<T> clazz, String query) {
+        // Arbitrary SQL may read or write other tables, pass it through
+        T[] results = dao.query(clazz, query);
+        invalidateIfWrite(query);
+        return results;
+    }
+
+    @Override
+    public <T> T[] query(Query<T> query) {
+        List<Object> key = new ArrayList<>();
+        key.add(query.getEntityClass());
+        key.add(query.shape());
+        for (Query.Predicate predicate : query.getPredicates()) {
+            key.addAll(Arrays.asList(predicate.values));
+        }
+        key.add(query.getLimit());
+        if (query.getAfterKey() != null) {
+            key.addAll(Arrays.asList(query.getAfterKey()));
+        }
+        return cachedQuery(query.getEntityClass(), key, () -> dao.query(query));
+    }
+
+    @Override
+    public Map<String, Object>[] queryRaw(String query) {
+        Map<String, Object>[] results = dao.queryRaw(query);
+        invalidateIfWrite(query);
+        return results;
+    }
+
+    @Override
+    public <T> void insertOrUpdate(T t) {
+        dao.insertOrUpdate(t);
+        invalidateEntity(t);
+    }
+
+    @Override
+    public <T> void insertOrUpdate(Class<T> clazz, T t) {
+        dao.insertOrUpdate(clazz, t);
+        invalidateEntity(t);
+    }
+
+    @Override
+    public <T> void insertBatch(T[] t) {
+        Set<Class<?>> classes = new HashSet<>();
+        if (t != null) {
+            for (T item : t) {
+                if (item != null) {
+                    classes.add(item.getClass());
+                }
+            }
+        }
+        try {
+            dao.insertBatch(t);
+        } finally {
+            // Earlier chunks may be committed even when the batch fails
+            invalidateClasses(classes);
+        }
+    }
+
+    @Override
+    public <T> void insertBatch(Iterable<T> items) {
+        // Items may only be iterable once, note the classes as the delegate consumes them
+        Set<Class<?>> classes = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        try {
+            dao.insertBatch((Iterable<T>) () -> new Iterator<T>() {
+                final Iterator<T> iterator = items.iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    T item = iterator.next();
+                    if (item != null) {
+                        classes.add(item.getClass());
+                    }
+                    return item;
+                }
+            });
+        } finally {
+            // Earlier chunks may be committed even when the batch fails
+            invalidateClasses(classes);
+        }
+    }
+
+    @Override
+    public <T, K> void delete(Class<T> clazz, K id) {
+        dao.delete(clazz, id);
+        EntityMetadata<T> metadata = EntityMetadata.of(clazz);
+        TableState state = table(metadata.getTableName());
+        state.modCount.incrementAndGet();
+        entityCache.remove(Arrays.asList(clazz, normalizeId(metadata, id)));
+    }
+
+    @Override
+    public <T> void delete(T t) {
+        dao.delete(t);
+        invalidateEntity(t);
+    }
+
+    @Override
+    public <T> void deleteByColumn(Class<T> clazz, String column, String value) {
+        dao.deleteByColumn(clazz, column, value);
+        invalidate(clazz);
+    }
+
+    @Override
+    public <T> void deleteAll(Class<T> clazz) {
+        dao.deleteAll(clazz);
+        invalidate(clazz);
+    }
+
+    @Override
+    public <T> Stream<T> streamAll(Class<T> clazz) {
+        return dao.streamAll(clazz);
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String column, String value) {
+        return dao.stream(clazz, column, value);
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> clazz, String query) {
+        return dao.stream(clazz, query).onClose(() -> invalidateIfWrite(query));
+    }
+
+    @Override
+    public <T> Stream<T> stream(Query<T> query) {
+        return dao.stream(query);
+    }
+
+    @Override
+    public Stream<Map<String, Object>> streamRaw(String query) {
+        return dao.streamRaw(query).onClose(() -> invalidateIfWrite(query));
+    }
+
+    private <T> T[] cachedQuery(Class<T> clazz, List<Object> key, Supplier<T[]> loader) {
+        TableState state = table(EntityMetadata.of(clazz).getTableName());
+        long modCount = state.modCount.get();
+        Cached cached = queryCache.get(key);
+        if (cached != null && cached.version == modCount) {
+            @SuppressWarnings("unchecked")
+            T[] results = (T[]) cached.value;
+            return results.clone();
+        }
+
+        T[] results = loader.get();
+        if (results.length <= maxCachedRows && state.modCount.get() == modCount) {
+            queryCache.put(key, new Cached(results.clone(), modCount));
+        }
+        return results;
+    }
+
+    private void invalidateEntity(Object t) {
+        if (t == null) {
+            return;
+        }
+        EntityMetadata<?> metadata = EntityMetadata.of(t.getClass());
+        TableState state = table(metadata.getTableName());
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        if (primaryKeys.length != 1) {
+            invalidateTable(metadata.getTableName());
+            return;
+        }
+        Object id;
+        try {
+            id = primaryKeys[0].get(t);
+        } catch (IllegalAccessException e) {
+            invalidateTable(metadata.getTableName());
+            return;
+        }
+        if (isUnassigned(primaryKeys[0], id)) {
+            // The database picks the id and it is not written back, a cached miss for it must go too
+            invalidateTable(metadata.getTableName());
+            return;
+        }
+        // Bump before removing, a read that raced the write drops what it put once it sees the bump
+        state.modCount.incrementAndGet();
+        entityCache.remove(Arrays.asList(t.getClass(), normalizeId(metadata, id)));
+    }
+
+    private void invalidateClasses(Set<Class<?>> classes) {
+        for (Class<?> clazz : classes) {
+            invalidate(clazz);
+        }
+    }
+
+    private void invalidateTable(String tableName) {
+        TableState state = table(tableName);
+        state.modCount.incrementAndGet();
+        state.epoch++;
+    }
+
+    private void invalidateIfWrite(String query) {
+        if (query == null || READ_ONLY.matcher(query).find()) {
+            return;
+        }
+        boolean matched = false;
+        for (TableState state : tables.values()) {
+            if (state.mention.matcher(query).find()) {
+                state.modCount.incrementAndGet();
+                state.epoch++;
+                matched = true;
+            }
+        }
+        if (!matched) {
+            invalidateAll();
+        }
+    }
+
+    private TableState table(String tableName) {
+        return tables.computeIfAbsent(tableName, TableState::new);
+    }
+
+    private static boolean isUnassigned(EntityMetadata.Column primaryKey, Object id) {
+        return id == null || (primaryKey.autoIncrement && id instanceof Number && ((Number) id).longValue() == 0);
+    }
+
+    // findById(Device.class, 5L) and an int id field must hit the same entry
+    private static Object normalizeId(EntityMetadata<?> metadata, Object id) {
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        if (primaryKeys.length == 1 && id instanceof Number) {
+            return primaryKeys[0].fromSql(id);
+        }
+        return id;
+    }
+}
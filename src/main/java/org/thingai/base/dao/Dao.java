@@ -1,6 +1,7 @@
 package org.thingai.base.dao;
 
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface Dao {
     String SQLITE = "sqlite";
@@ -10,18 +11,34 @@ public interface Dao {
     String IN_MEMORY = "in_memory";
     String FILE = "file";
 
-    void initDao(Class[] classes);
+    void initDao(Class<?>[] classes);
     <T> T[] readAll(Class<T> clazz);
     <T> void insertOrUpdate(T t);
     <T> void insertOrUpdate(Class<T> clazz, T t);
     <T> void insertBatch(T[] t);
+    <T> void insertBatch(Iterable<T> items);
+
+    default <T> void insertBatch(Stream<T> items) {
+        insertBatch((Iterable<T>) items::iterator);
+    }
+
     <T, K> void delete(Class<T> clazz, K id);
     <T> void delete(T t);
     <T> void deleteByColumn(Class<T> clazz, String column, String value);
     <T> void deleteAll(Class<T> clazz);
+    // Null when no row has the id
+    <T, K> T findById(Class<T> clazz, K id);
     <T> T[] query(Class<T> clazz, String column, String value);
     <T> T[] query(Class<T> clazz, String[] column, String[] value);
     <T> T[] query(Class<T> clazz, String query);
+    <T> T[] query(Query<T> query);
 
     Map<String, Object>[] queryRaw(String query);
+
+    // Lazily fetched rows, the stream holds a connection until it is closed
+    <T> Stream<T> streamAll(Class<T> clazz);
+    <T> Stream<T> stream(Class<T> clazz, String column, String value);
+    <T> Stream<T> stream(Class<T> clazz, String query);
+    <T> Stream<T> stream(Query<T> query);
+    Stream<Map<String, Object>> streamRaw(String query);
 }
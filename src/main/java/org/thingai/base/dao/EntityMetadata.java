@@ -0,0 +1,419 @@
+package org.thingai.base.dao;
+
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoIndex;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Resolved mapping of a {@link DaoTable} class: column names, primary keys, type converters and
+ * pre-rendered SQL. Built once per class and shared by every Dao call on that class.
+ */
+public class EntityMetadata<T> {
+    private static final Map<Class<?>, EntityMetadata<?>> registry = new ConcurrentHashMap<>();
+
+    public static class Column {
+        public final Field field;
+        public final String name;
+        public final Class<?> type;
+        public final String sqlType;
+        public final boolean primaryKey;
+        public final boolean nullable;
+        public final boolean autoIncrement;
+        public final boolean unique;
+        public final String defaultValue;
+        public final boolean indexed;
+
+        // Used instead of the field by generated mappers
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+
+        Column(Field field, DaoColumn daoColumn) {
+            this.field = field;
+            this.name = daoColumn.name().isEmpty() ? field.getName() : daoColumn.name();
+            this.type = field.getType();
+            this.sqlType = sqlTypeOf(type);
+            this.primaryKey = daoColumn.primaryKey();
+            this.nullable = daoColumn.nullable();
+            this.autoIncrement = daoColumn.autoIncrement();
+            this.unique = daoColumn.unique();
+            this.defaultValue = daoColumn.defaultValue();
+            this.indexed = daoColumn.indexed();
+            this.getter = null;
+            this.setter = null;
+            field.setAccessible(true);
+        }
+
+        public Column(String name, Class<?> type, boolean primaryKey, boolean nullable, boolean autoIncrement,
+                      boolean unique, String defaultValue,
+                      Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this(name, type, primaryKey, nullable, autoIncrement, unique, defaultValue, false, getter, setter);
+        }
+
+        public Column(String name, Class<?> type, boolean primaryKey, boolean nullable, boolean autoIncrement,
+                      boolean unique, String defaultValue, boolean indexed,
+                      Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.field = null;
+            this.name = name;
+            this.type = type;
+            this.sqlType = sqlTypeOf(type);
+            this.primaryKey = primaryKey;
+            this.nullable = nullable;
+            this.autoIncrement = autoIncrement;
+            this.unique = unique;
+            this.defaultValue = defaultValue;
+            this.indexed = indexed;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        // Convert a field value to the value bound to the statement
+        public Object toSql(Object value) {
+            if (type == boolean.class || type == Boolean.class) {
+                return value != null && (Boolean) value ? 1 : 0;
+            }
+            return value;
+        }
+
+        // Convert a value read from the driver to the field type
+        public Object fromSql(Object value) {
+            if (type == boolean.class || type == Boolean.class) {
+                return value != null && ((Number) value).intValue() != 0;
+            }
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Number) {
+                Number number = (Number) value;
+                if (type == int.class || type == Integer.class) {
+                    return number.intValue();
+                } else if (type == long.class || type == Long.class) {
+                    return number.longValue();
+                } else if (type == double.class || type == Double.class) {
+                    return number.doubleValue();
+                } else if (type == float.class || type == Float.class) {
+                    return number.floatValue();
+                }
+            }
+            return value;
+        }
+
+        public Object get(Object instance) throws IllegalAccessException {
+            return getter != null ? getter.apply(instance) : field.get(instance);
+        }
+
+        public void set(Object instance, Object value) throws IllegalAccessException {
+            // Primitive fields keep their default value for SQL NULL
+            if (value == null && type.isPrimitive()) {
+                return;
+            }
+            if (setter != null) {
+                setter.accept(instance, value);
+            } else {
+                field.set(instance, value);
+            }
+        }
+
+        private static String sqlTypeOf(Class<?> type) {
+            if (type == String.class) {
+                return "TEXT";
+            } else if (type == int.class || type == Integer.class || type == long.class || type == Long.class) {
+                return "INTEGER";
+            } else if (type == boolean.class || type == Boolean.class) {
+                return "INTEGER";
+            } else if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+                return "REAL";
+            } else {
+                return "BLOB";
+            }
+        }
+    }
+
+    public static class Index {
+        public final String name;
+        public final String[] columns;
+        public final boolean unique;
+
+        public Index(String name, String[] columns, boolean unique) {
+            this.name = name;
+            this.columns = columns;
+            this.unique = unique;
+        }
+    }
+
+    private final Class<T> clazz;
+    private final Constructor<T> constructor;
+    private final Supplier<T> factory;
+    private final String tableName;
+    private final Column[] columns;
+    private final Column[] primaryKeys;
+    private final Index[] indexes;
+    private final Map<String, Column> columnsByName;
+    private final int[] selectOrdinals;
+
+    private final String createTableSql;
+    private final String[] createIndexSql;
+    private final String insertOrReplaceSql;
+    private final String selectAllSql;
+    private final String idColumnName;
+    private final String selectByIdSql;
+    private final String deleteByIdSql;
+    private final String deleteByPrimaryKeySql;
+    private final String deleteAllSql;
+    private final Map<String, String> selectByColumnSql = new ConcurrentHashMap<>();
+    private final Map<String, String> deleteByColumnSql = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMetadata<T> of(Class<T> clazz) {
+        return (EntityMetadata<T>) registry.computeIfAbsent(clazz, c -> {
+            RowMapper<?> generated = RowMappers.generated(c);
+            return generated != null ? generated.getMetadata() : reflect(c);
+        });
+    }
+
+    private static <T> EntityMetadata<T> reflect(Class<T> clazz) {
+        DaoTable daoTable = clazz.getAnnotation(DaoTable.class);
+        String tableName = daoTable != null ? daoTable.name() : clazz.getSimpleName();
+
+        List<Column> columnList = new ArrayList<>();
+        for (Field field : getAllFields(clazz)) {
+            columnList.add(new Column(field, field.getAnnotation(DaoColumn.class)));
+        }
+        List<Index> indexList = new ArrayList<>();
+        for (DaoIndex daoIndex : clazz.getAnnotationsByType(DaoIndex.class)) {
+            indexList.add(new Index(daoIndex.name(), daoIndex.columns(), daoIndex.unique()));
+        }
+        return new EntityMetadata<>(clazz, tableName, columnList.toArray(new Column[0]), indexList.toArray(new Index[0]),
+                findConstructor(clazz), null);
+    }
+
+    // For mappers generated at compile time, no reflection involved
+    public EntityMetadata(Class<T> clazz, String tableName, Column[] columns, Supplier<T> factory) {
+        this(clazz, tableName, columns, new Index[0], null, factory);
+    }
+
+    public EntityMetadata(Class<T> clazz, String tableName, Column[] columns, Index[] indexes, Supplier<T> factory) {
+        this(clazz, tableName, columns, indexes, null, factory);
+    }
+
+    private EntityMetadata(Class<T> clazz, String tableName, Column[] columns, Index[] indexes,
+                           Constructor<T> constructor, Supplier<T> factory) {
+        this.clazz = clazz;
+        this.constructor = constructor;
+        this.factory = factory;
+        this.tableName = tableName;
+
+        List<Column> primaryKeyList = new ArrayList<>();
+        this.columnsByName = new HashMap<>();
+        for (Column column : columns) {
+            columnsByName.put(column.name, column);
+            if (column.primaryKey) {
+                primaryKeyList.add(column);
+            }
+        }
+        this.columns = columns;
+        this.primaryKeys = primaryKeyList.toArray(new Column[0]);
+        this.indexes = resolveIndexes(tableName, columns, indexes, columnsByName);
+        this.selectOrdinals = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selectOrdinals[i] = i + 1;
+        }
+
+        StringJoiner columnNames = new StringJoiner(", ");
+        StringJoiner placeholders = new StringJoiner(", ");
+        StringJoiner definitions = new StringJoiner(", ");
+        for (Column column : columns) {
+            columnNames.add(column.name);
+            placeholders.add("?");
+            definitions.add(definitionOf(column));
+        }
+        StringJoiner primaryKeyWhere = new StringJoiner(" AND ");
+        for (Column column : primaryKeys) {
+            primaryKeyWhere.add(column.name + " = ?");
+        }
+
+        this.createTableSql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + definitions + ");";
+        this.createIndexSql = new String[this.indexes.length];
+        for (int i = 0; i < this.indexes.length; i++) {
+            Index index = this.indexes[i];
+            createIndexSql[i] = "CREATE " + (index.unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + index.name
+                    + " ON " + tableName + " (" + String.join(", ", index.columns) + ");";
+        }
+        this.insertOrReplaceSql = "INSERT OR REPLACE INTO " + tableName + " (" + columnNames + ") VALUES (" + placeholders + ");";
+        this.selectAllSql = "SELECT " + columnNames + " FROM " + tableName + ";";
+        this.idColumnName = primaryKeys.length == 1 ? primaryKeys[0].name : "id";
+        this.selectByIdSql = "SELECT " + columnNames + " FROM " + tableName + " WHERE " + idColumnName + " = ?;";
+        this.deleteByIdSql = "DELETE FROM " + tableName + " WHERE " + idColumnName + " = ?;";
+        this.deleteByPrimaryKeySql = "DELETE FROM " + tableName + " WHERE " + primaryKeyWhere + ";";
+        this.deleteAllSql = "DELETE FROM " + tableName + ";";
+    }
+
+    public static Field[] getAllFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        while (clazz != null) {
+            fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
+            clazz = clazz.getSuperclass();
+        }
+
+        // Filter out fields that are not annotated with DaoColumn
+        fields.removeIf(field -> !field.isAnnotationPresent(DaoColumn.class));
+
+        return fields.toArray(new Field[0]);
+    }
+
+    // Single column indexes from @DaoColumn(indexed = true) followed by the declared ones, all named
+    private static Index[] resolveIndexes(String tableName, Column[] columns, Index[] declared, Map<String, Column> columnsByName) {
+        List<Index> resolved = new ArrayList<>();
+        for (Column column : columns) {
+            if (column.indexed) {
+                resolved.add(new Index("idx_" + tableName + "_" + column.name, new String[]{column.name}, false));
+            }
+        }
+        for (Index index : declared) {
+            if (index.columns.length == 0) {
+                throw new IllegalArgumentException("Index on " + tableName + " has no columns.");
+            }
+            for (String column : index.columns) {
+                if (!columnsByName.containsKey(column)) {
+                    throw new IllegalArgumentException("Index on " + tableName + " uses unknown column " + column + ".");
+                }
+            }
+            String name = index.name.isEmpty() ? "idx_" + tableName + "_" + String.join("_", index.columns) : index.name;
+            resolved.add(new Index(name, index.columns, index.unique));
+        }
+        return resolved.toArray(new Index[0]);
+    }
+
+    private static <T> Constructor<T> findConstructor(Class<T> clazz) {
+        try {
+            Constructor<T> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            // Only needed when reading rows back, fail there instead
+            return null;
+        }
+    }
+
+    private static String definitionOf(Column column) {
+        StringBuilder definition = new StringBuilder(column.name).append(' ').append(column.sqlType);
+        if (column.primaryKey) {
+            definition.append(" PRIMARY KEY");
+        }
+        if (!column.nullable) {
+            definition.append(" NOT NULL");
+        }
+        if (column.unique) {
+            definition.append(" UNIQUE");
+        }
+        if (column.autoIncrement) {
+            definition.append(" AUTOINCREMENT");
+        }
+        if (!column.defaultValue.isEmpty()) {
+            definition.append(" DEFAULT ").append(column.defaultValue);
+        }
+        return definition.toString();
+    }
+
+    public Class<T> getEntityClass() {
+        return clazz;
+    }
+
+    public T newInstance() throws ReflectiveOperationException {
+        if (factory != null) {
+            return factory.get();
+        }
+        if (constructor == null) {
+            throw new NoSuchMethodException(clazz.getName() + " has no no-arg constructor.");
+        }
+        return constructor.newInstance();
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public Column[] getColumns() {
+        return columns;
+    }
+
+    public Column[] getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    public Index[] getIndexes() {
+        return indexes;
+    }
+
+    public Column getColumn(String name) {
+        return columnsByName.get(name);
+    }
+
+    // Result set ordinals of the columns in statements rendered by this class
+    public int[] getSelectOrdinals() {
+        return selectOrdinals;
+    }
+
+    public String getCreateTableSql() {
+        return createTableSql;
+    }
+
+    public String[] getCreateIndexSql() {
+        return createIndexSql;
+    }
+
+    public String getInsertOrReplaceSql() {
+        return insertOrReplaceSql;
+    }
+
+    public String getSelectAllSql() {
+        return selectAllSql;
+    }
+
+    // The single primary key, or "id" when there is none or it is composite
+    public String getIdColumnName() {
+        return idColumnName;
+    }
+
+    public String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    public String getDeleteByIdSql() {
+        return deleteByIdSql;
+    }
+
+    public String getDeleteByPrimaryKeySql() {
+        return deleteByPrimaryKeySql;
+    }
+
+    public String getDeleteAllSql() {
+        return deleteAllSql;
+    }
+
+    public String getSelectByColumnSql(String column) {
+        return selectByColumnSql.computeIfAbsent(column, c ->
+                selectAllSql.substring(0, selectAllSql.length() - 1) + " WHERE " + c + " = ?;");
+    }
+
+    public String getSelectByColumnsSql(String[] columns) {
+        return selectByColumnSql.computeIfAbsent(String.join("\u0000", columns), key -> {
+            StringJoiner whereClause = new StringJoiner(" AND ");
+            for (String column : columns) {
+                whereClause.add(column + " = ?");
+            }
+            return selectAllSql.substring(0, selectAllSql.length() - 1) + " WHERE " + whereClause + ";";
+        });
+    }
+
+    public String getDeleteByColumnSql(String column) {
+        return deleteByColumnSql.computeIfAbsent(column, c -> "DELETE FROM " + tableName + " WHERE " + c + " = ?;");
+    }
+}
@@ -0,0 +1,248 @@
+package org.thingai.base.dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Default {@link RowMapper} for classes without a registered or generated mapper. Fields are
+ * accessed through typed method handles and read with the primitive JDBC getter matching the field
+ * type, so primitive columns are never boxed.
+ * <p>
+ * The handles are held per column and dispatched on the column kind for every cell, so the JIT
+ * cannot treat them as constants or inline the field access. Mappers generated by
+ * {@link org.thingai.base.dao.processor.DaoMapperProcessor} access fields directly and should be
+ * preferred where access speed matters.
+ */
+public class MethodHandleRowMapper<T> implements RowMapper<T> {
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int FLOAT = 3;
+    private static final int BOOLEAN = 4;
+    private static final int BOXED_INT = 5;
+    private static final int BOXED_LONG = 6;
+    private static final int BOXED_DOUBLE = 7;
+    private static final int BOXED_FLOAT = 8;
+    private static final int BOXED_BOOLEAN = 9;
+    private static final int STRING = 10;
+    private static final int BYTES = 11;
+    private static final int OBJECT = 12;
+
+    static class Slot {
+        final EntityMetadata.Column column;
+        final int kind;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        Slot(EntityMetadata.Column column) throws IllegalAccessException {
+            this.column = column;
+            this.kind = kindOf(column.type);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle rawGetter = lookup.unreflectGetter(column.field);
+            MethodHandle rawSetter = lookup.unreflectSetter(column.field);
+            Class<?> valueType = column.type.isPrimitive() ? column.type : Object.class;
+            this.getter = rawGetter.asType(MethodType.methodType(valueType, Object.class));
+            this.setter = rawSetter.asType(MethodType.methodType(void.class, Object.class, valueType));
+        }
+
+        void read(ResultSet resultSet, int ordinal, Object target) throws Throwable {
+            switch (kind) {
+                case INT:
+                    setter.invokeExact(target, resultSet.getInt(ordinal));
+                    break;
+                case LONG:
+                    setter.invokeExact(target, resultSet.getLong(ordinal));
+                    break;
+                case DOUBLE:
+                    setter.invokeExact(target, resultSet.getDouble(ordinal));
+                    break;
+                case FLOAT:
+                    setter.invokeExact(target, resultSet.getFloat(ordinal));
+                    break;
+                case BOOLEAN:
+                    setter.invokeExact(target, resultSet.getInt(ordinal) != 0);
+                    break;
+                case BOXED_INT: {
+                    int value = resultSet.getInt(ordinal);
+                    setter.invokeExact(target, (Object) (resultSet.wasNull() ? null : value));
+                    break;
+                }
+                case BOXED_LONG: {
+                    long value = resultSet.getLong(ordinal);
+                    setter.invokeExact(target, (Object) (resultSet.wasNull() ? null : value));
+                    break;
+                }
+                case BOXED_DOUBLE: {
+                    double value = resultSet.getDouble(ordinal);
+                    setter.invokeExact(target, (Object) (resultSet.wasNull() ? null : value));
+                    break;
+                }
+                case BOXED_FLOAT: {
+                    float value = resultSet.getFloat(ordinal);
+                    setter.invokeExact(target, (Object) (resultSet.wasNull() ? null : value));
+                    break;
+                }
+                case BOXED_BOOLEAN:
+                    setter.invokeExact(target, (Object) (resultSet.getInt(ordinal) != 0));
+                    break;
+                case STRING:
+                    setter.invokeExact(target, (Object) resultSet.getString(ordinal));
+                    break;
+                case BYTES:
+                    setter.invokeExact(target, (Object) resultSet.getBytes(ordinal));
+                    break;
+                default:
+                    setter.invokeExact(target, column.fromSql(resultSet.getObject(ordinal)));
+                    break;
+            }
+        }
+
+        void bind(PreparedStatement statement, int index, Object source) throws Throwable {
+            switch (kind) {
+                case INT:
+                    statement.setInt(index, (int) getter.invokeExact(source));
+                    break;
+                case LONG:
+                    statement.setLong(index, (long) getter.invokeExact(source));
+                    break;
+                case DOUBLE:
+                    statement.setDouble(index, (double) getter.invokeExact(source));
+                    break;
+                case FLOAT:
+                    statement.setFloat(index, (float) getter.invokeExact(source));
+                    break;
+                case BOOLEAN:
+                    statement.setInt(index, (boolean) getter.invokeExact(source) ? 1 : 0);
+                    break;
+                case BOXED_BOOLEAN: {
+                    Boolean value = (Boolean) (Object) getter.invokeExact(source);
+                    statement.setInt(index, value != null && value ? 1 : 0);
+                    break;
+                }
+                case STRING: {
+                    Object value = (Object) getter.invokeExact(source);
+                    if (value == null) {
+                        statement.setNull(index, Types.VARCHAR);
+                    } else {
+                        statement.setString(index, (String) value);
+                    }
+                    break;
+                }
+                default: {
+                    Object value = (Object) getter.invokeExact(source);
+                    statement.setObject(index, column.toSql(value));
+                    break;
+                }
+            }
+        }
+
+        private static int kindOf(Class<?> type) {
+            if (type == int.class) {
+                return INT;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (type == float.class) {
+                return FLOAT;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == Integer.class) {
+                return BOXED_INT;
+            } else if (type == Long.class) {
+                return BOXED_LONG;
+            } else if (type == Double.class) {
+                return BOXED_DOUBLE;
+            } else if (type == Float.class) {
+                return BOXED_FLOAT;
+            } else if (type == Boolean.class) {
+                return BOXED_BOOLEAN;
+            } else if (type == String.class) {
+                return STRING;
+            } else if (type == byte[].class) {
+                return BYTES;
+            }
+            return OBJECT;
+        }
+    }
+
+    private final EntityMetadata<T> metadata;
+    private final Slot[] slots;
+    private final Slot[] primaryKeySlots;
+
+    public MethodHandleRowMapper(EntityMetadata<T> metadata) {
+        this.metadata = metadata;
+        EntityMetadata.Column[] columns = metadata.getColumns();
+        EntityMetadata.Column[] primaryKeys = metadata.getPrimaryKeys();
+        this.slots = new Slot[columns.length];
+        this.primaryKeySlots = new Slot[primaryKeys.length];
+        try {
+            int primaryKeyIndex = 0;
+            for (int i = 0; i < columns.length; i++) {
+                slots[i] = new Slot(columns[i]);
+                if (columns[i].primaryKey) {
+                    primaryKeySlots[primaryKeyIndex++] = slots[i];
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access columns of " + metadata.getTableName(), e);
+        }
+    }
+
+    @Override
+    public EntityMetadata<T> getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public T map(ResultSet resultSet, int[] ordinals) throws SQLException {
+        T instance;
+        try {
+            instance = metadata.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("Cannot instantiate " + metadata.getEntityClass().getName(), e);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (ordinals[i] == 0) {
+                continue;
+            }
+            try {
+                slots[i].read(resultSet, ordinals[i], instance);
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SQLException("Cannot read column " + slots[i].column.name, t);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public void bind(PreparedStatement statement, T t) throws SQLException {
+        for (int i = 0; i < slots.length; i++) {
+            bind(slots[i], statement, i + 1, t);
+        }
+    }
+
+    @Override
+    public void bindPrimaryKey(PreparedStatement statement, int startIndex, T t) throws SQLException {
+        for (int i = 0; i < primaryKeySlots.length; i++) {
+            bind(primaryKeySlots[i], statement, startIndex + i, t);
+        }
+    }
+
+    private static void bind(Slot slot, PreparedStatement statement, int index, Object source) throws SQLException {
+        try {
+            slot.bind(statement, index, source);
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new SQLException("Cannot bind column " + slot.column.name, t);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.thingai.base.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed query over a {@link org.thingai.base.dao.annotations.DaoTable} class. Columns are checked
+ * against the entity metadata when the query is built, values are always bound as parameters.
+ *
+ * <pre>
+ * Query.from(Device.class).select("id", "name").where("temp", Query.Operator.GT, 20)
+ *         .orderBy("id").limit(100).after(lastId);
+ * </pre>
+ */
+public class Query<T> {
+    public enum Operator {
+        EQ("="),
+        NE("<>"),
+        LT("<"),
+        LE("<="),
+        GT(">"),
+        GE(">="),
+        LIKE("LIKE"),
+        IN("IN");
+
+        public final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    public static class Predicate {
+        public final String column;
+        public final Operator operator;
+        public final Object[] values;
+
+        Predicate(String column, Operator operator, Object[] values) {
+            this.column = column;
+            this.operator = operator;
+            this.values = values;
+        }
+    }
+
+    public static class Order {
+        public final String column;
+        public final boolean descending;
+
+        Order(String column, boolean descending) {
+            this.column = column;
+            this.descending = descending;
+        }
+    }
+
+    private final Class<T> clazz;
+    private final EntityMetadata<T> metadata;
+    private final List<String> projection = new ArrayList<>();
+    private final List<Predicate> predicates = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private int limit = -1;
+    private Object[] afterKey;
+
+    private Query(Class<T> clazz) {
+        this.clazz = clazz;
+        this.metadata = EntityMetadata.of(clazz);
+    }
+
+    public static <T> Query<T> from(Class<T> clazz) {
+        return new Query<>(clazz);
+    }
+
+    // Only the given columns are read, other fields keep their default value
+    public Query<T> select(String... columns) {
+        for (String column : columns) {
+            projection.add(checkColumn(column));
+        }
+        return this;
+    }
+
+    public Query<T> where(String column, Operator operator, Object value) {
+        if (operator == Operator.IN) {
+            throw new IllegalArgumentException("Use whereIn for IN predicates.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot compare column " + column + " with null.");
+        }
+        predicates.add(new Predicate(checkColumn(column), operator, new Object[]{value}));
+        return this;
+    }
+
+    public Query<T> where(String column, Object value) {
+        return where(column, Operator.EQ, value);
+    }
+
+    public Query<T> whereIn(String column, Collection<?> values) {
+        if (values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("Cannot read with empty IN values.");
+        }
+        predicates.add(new Predicate(checkColumn(column), Operator.IN, values.toArray()));
+        return this;
+    }
+
+    public Query<T> whereIn(String column, Object... values) {
+        return whereIn(column, List.of(values));
+    }
+
+    public Query<T> between(String column, Object from, Object to) {
+        return where(column, Operator.GE, from).where(column, Operator.LE, to);
+    }
+
+    public Query<T> orderBy(String column) {
+        orders.add(new Order(checkColumn(column), false));
+        return this;
+    }
+
+    public Query<T> orderByDesc(String column) {
+        orders.add(new Order(checkColumn(column), true));
+        return this;
+    }
+
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Seek past the given key, one value per ORDER BY column (the primary key when no order is
+     * set). Pass the key of the last row of the previous page.
+     */
+    public Query<T> after(Object... key) {
+        this.afterKey = key;
+        return this;
+    }
+
+    public Class<T> getEntityClass() {
+        return clazz;
+    }
+
+    public EntityMetadata<T> getMetadata() {
+        return metadata;
+    }
+
+    public List<String> getProjection() {
+        return Collections.unmodifiableList(projection);
+    }
+
+    public List<Predicate> getPredicates() {
+        return Collections.unmodifiableList(predicates);
+    }
+
+    // Explicit order, or the primary key ascending when seeking without one
+    public List<Order> getOrders() {
+        if (orders.isEmpty() && afterKey != null) {
+            List<Order> primaryKeyOrder = new ArrayList<>();
+            for (EntityMetadata.Column column : metadata.getPrimaryKeys()) {
+                primaryKeyOrder.add(new Order(column.name, false));
+            }
+            return primaryKeyOrder;
+        }
+        return Collections.unmodifiableList(orders);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Object[] getAfterKey() {
+        return afterKey;
+    }
+
+    // Identifies queries that compile to the same SQL, values excluded
+    public String shape() {
+        StringBuilder shape = new StringBuilder(clazz.getName()).append('|');
+        shape.append(String.join(",", projection)).append('|');
+        for (Predicate predicate : predicates) {
+            shape.append(predicate.column).append(' ').append(predicate.operator.name());
+            if (predicate.operator == Operator.IN) {
+                shape.append(predicate.values.length);
+            }
+            shape.append(',');
+        }
+        shape.append('|');
+        for (Order order : getOrders()) {
+            shape.append(order.column).append(order.descending ? " DESC," : " ASC,");
+        }
+        shape.append('|').append(limit >= 0).append('|').append(afterKey != null ? afterKey.length : 0);
+        return shape.toString();
+    }
+
+    private String checkColumn(String column) {
+        if (column == null || metadata.getColumn(column) == null) {
+            throw new IllegalArgumentException("Unknown column " + column + " for " + metadata.getTableName() + ".");
+        }
+        return column;
+    }
+}
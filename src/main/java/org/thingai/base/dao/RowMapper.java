@@ -0,0 +1,22 @@
+package org.thingai.base.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps rows of a {@link org.thingai.base.dao.annotations.DaoTable} class to and from JDBC.
+ * Columns are addressed by ordinal in {@link EntityMetadata#getColumns()} order.
+ */
+public interface RowMapper<T> {
+    EntityMetadata<T> getMetadata();
+
+    // ordinals[i] is the result set index of column i, or 0 when the column was not selected
+    T map(ResultSet resultSet, int[] ordinals) throws SQLException;
+
+    // Binds every column starting at parameter index 1
+    void bind(PreparedStatement statement, T t) throws SQLException;
+
+    // Binds the primary key columns starting at the given parameter index
+    void bindPrimaryKey(PreparedStatement statement, int startIndex, T t) throws SQLException;
+}
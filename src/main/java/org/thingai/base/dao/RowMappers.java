@@ -0,0 +1,74 @@
+package org.thingai.base.dao;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class RowMappers {
+    // Suffix of the mappers generated by DaoMapperProcessor
+    public static final String GENERATED_SUFFIX = "_DaoMapper";
+
+    private static final Map<Class<?>, RowMapper<?>> registry = new ConcurrentHashMap<>();
+    private static final Map<ClassLoader, Map<Class<?>, RowMapper<?>>> generated = new ConcurrentHashMap<>();
+
+    private RowMappers() {
+
+    }
+
+    public static <T> void register(Class<T> clazz, RowMapper<T> mapper) {
+        registry.put(clazz, mapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(Class<T> clazz) {
+        return (RowMapper<T>) registry.computeIfAbsent(clazz, c -> {
+            RowMapper<?> mapper = generated(c);
+            return mapper != null ? mapper : new MethodHandleRowMapper<>(EntityMetadata.of(c));
+        });
+    }
+
+    // Mapper generated at compile time for the class, or null to fall back to reflection
+    @SuppressWarnings("unchecked")
+    static <T> RowMapper<T> generated(Class<T> clazz) {
+        ClassLoader loader = clazz.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        return (RowMapper<T>) generated.computeIfAbsent(loader, RowMappers::loadGenerated).get(clazz);
+    }
+
+    // DaoMapperProcessor lists its mappers as services, so none is looked up by name or created reflectively
+    @SuppressWarnings("rawtypes")
+    private static Map<Class<?>, RowMapper<?>> loadGenerated(ClassLoader loader) {
+        Map<Class<?>, RowMapper<?>> mappers = new HashMap<>();
+        try {
+            for (RowMapper mapper : ServiceLoader.load(RowMapper.class, loader)) {
+                mappers.put(mapper.getMetadata().getEntityClass(), mapper);
+            }
+        } catch (ServiceConfigurationError e) {
+            throw new IllegalStateException("Cannot load generated mappers.", e);
+        }
+        return mappers;
+    }
+
+    // Resolve column ordinals of an arbitrary result set once, so rows can be read by index
+    public static int[] ordinals(EntityMetadata<?> metadata, ResultSetMetaData resultSetMetaData) throws SQLException {
+        EntityMetadata.Column[] columns = metadata.getColumns();
+        int[] ordinals = new int[columns.length];
+        int columnCount = resultSetMetaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            String label = resultSetMetaData.getColumnLabel(i);
+            for (int j = 0; j < columns.length; j++) {
+                if (ordinals[j] == 0 && columns[j].name.equalsIgnoreCase(label)) {
+                    ordinals[j] = i;
+                    break;
+                }
+            }
+        }
+        return ordinals;
+    }
+}
@@ -14,4 +14,5 @@ public @interface DaoColumn {
     boolean autoIncrement() default false;
     boolean unique() default false;
     String defaultValue() default "";
+    boolean indexed() default false;
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package org.thingai.base.dao.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(DaoIndexes.class)
+public @interface DaoIndex {
+    String name() default "";
+    String[] columns();
+    boolean unique() default false;
+}
\ No newline at end of file
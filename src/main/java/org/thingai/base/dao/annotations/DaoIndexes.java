@@ -0,0 +1,12 @@
+package org.thingai.base.dao.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DaoIndexes {
+    DaoIndex[] value();
+}
\ No newline at end of file
@@ -0,0 +1,358 @@
+package org.thingai.base.dao.processor;
+
+import org.thingai.base.dao.RowMapper;
+import org.thingai.base.dao.RowMappers;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoIndex;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code <Entity>_DaoMapper} next to every {@link DaoTable} class, so the Dao can map
+ * rows without reflection. The mappers are listed in {@code META-INF/services/org.thingai.base.dao.RowMapper}
+ * and found through {@link java.util.ServiceLoader}. Classes whose columns are not reachable from generated code in the same
+ * package (private fields, no accessible no-arg constructor) are skipped and keep using reflection.
+ */
+@SupportedAnnotationTypes("org.thingai.base.dao.annotations.DaoTable")
+public class DaoMapperProcessor extends AbstractProcessor {
+
+    static class ColumnInfo {
+        String fieldName;
+        String name;
+        String typeName;
+        String boxedName;
+        String getter;
+        String setter;
+        boolean primitive;
+        DaoColumn daoColumn;
+    }
+
+    static final String SERVICES_FILE = "META-INF/services/" + RowMapper.class.getName();
+
+    // Mappers generated in every round, written out as services once processing is over
+    private final List<String> generatedMappers = new ArrayList<>();
+    private final List<Element> originatingElements = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServices();
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(DaoTable.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            String reason = unsupportedReason(typeElement);
+            if (reason != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "No mapper generated for " + typeElement.getQualifiedName() + " (" + reason + "), reflection will be used.", typeElement);
+                continue;
+            }
+            try {
+                generate(typeElement);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Cannot write mapper for " + typeElement.getQualifiedName() + ": " + e.getMessage(), typeElement);
+            }
+        }
+        return false;
+    }
+
+    private void writeServices() {
+        if (generatedMappers.isEmpty()) {
+            return;
+        }
+        Filer filer = processingEnv.getFiler();
+        try (PrintWriter out = new PrintWriter(filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES_FILE,
+                originatingElements.toArray(new Element[0])).openWriter())) {
+            for (String mapper : generatedMappers) {
+                out.println(mapper);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + SERVICES_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private String unsupportedReason(TypeElement typeElement) {
+        Set<Modifier> modifiers = typeElement.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT)) {
+            return "abstract class";
+        }
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return "private class";
+        }
+        for (Element enclosing = typeElement; enclosing.getEnclosingElement().getKind() != ElementKind.PACKAGE; enclosing = enclosing.getEnclosingElement()) {
+            if (!enclosing.getModifiers().contains(Modifier.STATIC) || enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                return "inner or private enclosing class";
+            }
+        }
+
+        boolean hasConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(typeElement.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+            }
+        }
+        if (!hasConstructor) {
+            return "no accessible no-arg constructor";
+        }
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(typeElement);
+        for (TypeElement type = typeElement; type != null; type = superclassOf(type)) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (field.getAnnotation(DaoColumn.class) == null) {
+                    continue;
+                }
+                Set<Modifier> fieldModifiers = field.getModifiers();
+                if (fieldModifiers.contains(Modifier.PRIVATE) || fieldModifiers.contains(Modifier.FINAL)) {
+                    return "private or final column " + field.getSimpleName();
+                }
+                boolean samePackage = processingEnv.getElementUtils().getPackageOf(type).equals(packageElement);
+                if (!samePackage && !fieldModifiers.contains(Modifier.PUBLIC)) {
+                    return "inherited column " + field.getSimpleName() + " is not public";
+                }
+            }
+        }
+        return null;
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private List<ColumnInfo> columnsOf(TypeElement typeElement) {
+        // Same order as EntityMetadata.getAllFields: declared fields first, then superclasses
+        List<ColumnInfo> columns = new ArrayList<>();
+        for (TypeElement type = typeElement; type != null; type = superclassOf(type)) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                DaoColumn daoColumn = field.getAnnotation(DaoColumn.class);
+                if (daoColumn == null) {
+                    continue;
+                }
+                ColumnInfo column = new ColumnInfo();
+                column.fieldName = field.getSimpleName().toString();
+                column.name = daoColumn.name().isEmpty() ? column.fieldName : daoColumn.name();
+                column.daoColumn = daoColumn;
+                describeType(column, field.asType());
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    // Resolve the Java type name and the JDBC accessors used for it
+    private void describeType(ColumnInfo column, TypeMirror type) {
+        column.primitive = type.getKind().isPrimitive();
+        column.typeName = processingEnv.getTypeUtils().erasure(type).toString();
+        column.boxedName = column.primitive
+                ? processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString()
+                : column.typeName;
+
+        switch (type.getKind()) {
+            case INT:
+                column.getter = "Int";
+                break;
+            case LONG:
+                column.getter = "Long";
+                break;
+            case DOUBLE:
+                column.getter = "Double";
+                break;
+            case FLOAT:
+                column.getter = "Float";
+                break;
+            case BOOLEAN:
+                column.getter = "Boolean";
+                break;
+            case ARRAY:
+                column.getter = ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? "Bytes" : null;
+                break;
+            default:
+                column.getter = boxedGetter(column.typeName);
+                break;
+        }
+        column.setter = column.getter;
+    }
+
+    private static String boxedGetter(String typeName) {
+        switch (typeName) {
+            case "java.lang.Integer":
+                return "Int";
+            case "java.lang.Long":
+                return "Long";
+            case "java.lang.Double":
+                return "Double";
+            case "java.lang.Float":
+                return "Float";
+            case "java.lang.Boolean":
+                return "Boolean";
+            case "java.lang.String":
+                return "String";
+            default:
+                return null;
+        }
+    }
+
+    private void generate(TypeElement typeElement) throws IOException {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(typeElement);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_');
+        String mapperName = simpleName + RowMappers.GENERATED_SUFFIX;
+        String entity = typeElement.getQualifiedName().toString();
+        String tableName = typeElement.getAnnotation(DaoTable.class).name();
+        List<ColumnInfo> columns = columnsOf(typeElement);
+
+        String qualifiedMapperName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedMapperName, typeElement).openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import org.thingai.base.dao.EntityMetadata;");
+            out.println("import org.thingai.base.dao.RowMapper;");
+            out.println();
+            out.println("import java.sql.PreparedStatement;");
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("@javax.annotation.processing.Generated(\"" + DaoMapperProcessor.class.getName() + "\")");
+            out.println("public final class " + mapperName + " implements RowMapper<" + entity + "> {");
+            out.println("    private final EntityMetadata<" + entity + "> metadata = new EntityMetadata<>(" + entity + ".class, " + literal(tableName) + ", new EntityMetadata.Column[]{");
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnInfo column = columns.get(i);
+                DaoColumn daoColumn = column.daoColumn;
+                out.println("            new EntityMetadata.Column(" + literal(column.name) + ", " + column.typeName + ".class, "
+                        + daoColumn.primaryKey() + ", " + daoColumn.nullable() + ", " + daoColumn.autoIncrement() + ", "
+                        + daoColumn.unique() + ", " + literal(daoColumn.defaultValue()) + ", " + daoColumn.indexed() + ",");
+                out.println("                    o -> ((" + entity + ") o)." + column.fieldName + ",");
+                out.println("                    (o, v) -> ((" + entity + ") o)." + column.fieldName + " = (" + column.boxedName + ") v)"
+                        + (i < columns.size() - 1 ? "," : ""));
+            }
+            out.println("    }, new EntityMetadata.Index[]{");
+            DaoIndex[] indexes = typeElement.getAnnotationsByType(DaoIndex.class);
+            for (int i = 0; i < indexes.length; i++) {
+                StringBuilder indexColumns = new StringBuilder();
+                for (String column : indexes[i].columns()) {
+                    indexColumns.append(indexColumns.length() == 0 ? "" : ", ").append(literal(column));
+                }
+                out.println("            new EntityMetadata.Index(" + literal(indexes[i].name()) + ", new String[]{" + indexColumns + "}, "
+                        + indexes[i].unique() + ")" + (i < indexes.length - 1 ? "," : ""));
+            }
+            out.println("    }, " + entity + "::new);");
+            out.println();
+            out.println("    @Override");
+            out.println("    public EntityMetadata<" + entity + "> getMetadata() {");
+            out.println("        return metadata;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + entity + " map(ResultSet resultSet, int[] ordinals) throws SQLException {");
+            out.println("        " + entity + " t = new " + entity + "();");
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnInfo column = columns.get(i);
+                out.println("        if (ordinals[" + i + "] != 0) {");
+                out.println("            " + readStatement(column, i));
+                out.println("        }");
+            }
+            out.println("        return t;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void bind(PreparedStatement statement, " + entity + " t) throws SQLException {");
+            for (int i = 0; i < columns.size(); i++) {
+                out.println("        " + bindStatement(columns.get(i), i, String.valueOf(i + 1)));
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void bindPrimaryKey(PreparedStatement statement, int startIndex, " + entity + " t) throws SQLException {");
+            int primaryKeyIndex = 0;
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).daoColumn.primaryKey()) {
+                    out.println("        " + bindStatement(columns.get(i), i, "startIndex + " + primaryKeyIndex++));
+                }
+            }
+            out.println("    }");
+            out.println("}");
+        }
+        generatedMappers.add(qualifiedMapperName);
+        originatingElements.add(typeElement);
+    }
+
+    private String readStatement(ColumnInfo column, int i) {
+        String ordinal = "ordinals[" + i + "]";
+        String target = "t." + column.fieldName;
+        if (column.getter == null) {
+            return target + " = (" + column.boxedName + ") metadata.getColumns()[" + i + "].fromSql(resultSet.getObject(" + ordinal + "));";
+        }
+        if ("Boolean".equals(column.getter)) {
+            return target + " = resultSet.getInt(" + ordinal + ") != 0;";
+        }
+        if (column.primitive || "String".equals(column.getter) || "Bytes".equals(column.getter)) {
+            return target + " = resultSet.get" + column.getter + "(" + ordinal + ");";
+        }
+        // Boxed numbers keep SQL NULL
+        String primitive = "Int".equals(column.getter) ? "int" : column.getter.toLowerCase();
+        return "{ " + primitive + " value = resultSet.get" + column.getter + "(" + ordinal + "); "
+                + target + " = resultSet.wasNull() ? null : value; }";
+    }
+
+    private String bindStatement(ColumnInfo column, int i, String index) {
+        String source = "t." + column.fieldName;
+        if (column.getter == null || !column.primitive && !"String".equals(column.getter) && !"Bytes".equals(column.getter)) {
+            return "statement.setObject(" + index + ", metadata.getColumns()[" + i + "].toSql(" + source + "));";
+        }
+        if ("Boolean".equals(column.getter)) {
+            return "statement.setInt(" + index + ", " + source + " ? 1 : 0);";
+        }
+        return "statement.set" + column.setter + "(" + index + ", " + source + ");";
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                default:
+                    literal.append(c);
+                    break;
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
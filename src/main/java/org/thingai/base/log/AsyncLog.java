@@ -0,0 +1,291 @@
+package org.thingai.base.log;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Backend that hands events to a single writer thread through a bounded lock-free ring buffer
+ * (Vyukov style multi producer, single consumer). Producers only claim a slot and store the raw
+ * message parts in a preallocated event, so logging allocates nothing on the calling thread; the
+ * writer joins, formats and writes whole batches to a {@link LogSink}. When the buffer is full the
+ * {@link OverflowPolicy} decides between waiting and dropping.
+ *
+ * <pre>
+ * AsyncLog log = new AsyncLog(LogSink.console(), 8192, OverflowPolicy.DROP);
+ * log.registerShutdownHook();
+ * ILog.setBackend(log);
+ * </pre>
+ */
+public class AsyncLog extends ILog {
+    private static final String TAG = "AsyncLog";
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int MAX_BATCH = 256;
+
+    static class Event {
+        int level;
+        long time;
+        String tag;
+        String first;
+        String second;
+        boolean pair;
+        String[] parts;
+    }
+
+    private final Event[] events;
+    // Slot i is free for position p when sequences[i] == p and readable when it is p + 1
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final LogSink sink;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread writerThread;
+    // Only the writer advances head, written trails it once a batch reaches the sink
+    private long head;
+    private volatile long written;
+    private volatile boolean running = true;
+    // Set while the writer is parked with nothing to do, producers only unpark it then
+    private volatile boolean idle;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Thread shutdownHook;
+    private int sampleRate = 100;
+
+    public AsyncLog(LogSink sink, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2.");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.events = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.sink = sink;
+        this.overflowPolicy = overflowPolicy;
+        this.writerThread = new Thread(this::run, TAG);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    // With OverflowPolicy.SAMPLE, one in this many events is kept while the buffer is full
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive.");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Flushes and closes on JVM shutdown, so buffered events are not lost on exit
+    public synchronized void registerShutdownHook() {
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::close, TAG + "-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    @Override
+    protected void log(int level, String tag, String message) {
+        enqueue(level, tag, message, null, false, null);
+    }
+
+    @Override
+    protected void log(int level, String tag, String first, String second) {
+        enqueue(level, tag, first, second, true, null);
+    }
+
+    @Override
+    protected void log(int level, String tag, String[] parts) {
+        enqueue(level, tag, null, null, false, parts);
+    }
+
+    @Override
+    public void flush() {
+        long target = tail.get();
+        while (written < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    // Writes what is queued, stops the writer and closes the sink, later events are dropped
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        flush();
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Thread hook = shutdownHook;
+        if (hook != null && Thread.currentThread() != hook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // Already shutting down
+            }
+        }
+    }
+
+    private void enqueue(int level, String tag, String first, String second, boolean pair, String[] parts) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+        boolean waiting = false;
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // Full, the policy decides once per event whether it waits
+                if (!waiting && !shouldWait(level) || !running || !writerThread.isAlive()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                waiting = true;
+                LockSupport.unpark(writerThread);
+                Thread.onSpinWait();
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+
+        int index = (int) (position & mask);
+        Event event = events[index];
+        event.level = level;
+        event.time = System.currentTimeMillis();
+        event.tag = tag;
+        event.first = first;
+        event.second = second;
+        event.pair = pair;
+        event.parts = parts;
+        // Publishes the event to the writer, a full store so the idle check below cannot pass it
+        sequences.set(index, position + 1);
+        if (idle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private boolean shouldWait(int level) {
+        if (level >= ERROR || overflowPolicy == OverflowPolicy.BLOCK) {
+            return true;
+        }
+        return overflowPolicy == OverflowPolicy.SAMPLE && overflows.incrementAndGet() % sampleRate == 0;
+    }
+
+    private void run() {
+        StringBuilder batch = new StringBuilder(8192);
+        long reportedDrops = 0;
+        while (running || hasNext()) {
+            int count = 0;
+            while (count < MAX_BATCH && hasNext()) {
+                int index = (int) (head & mask);
+                format(events[index], batch);
+                clear(events[index]);
+                sequences.lazySet(index, head + events.length);
+                head++;
+                count++;
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops && count == 0) {
+                batch.append(TIME_FORMAT.format(Instant.now())).append(" WARN: ").append(TAG)
+                        .append(": dropped ").append(drops - reportedDrops).append(" log events\n");
+                reportedDrops = drops;
+            }
+
+            if (batch.length() > 0) {
+                try {
+                    sink.write(batch);
+                    if (!hasNext()) {
+                        sink.flush();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+                batch.setLength(0);
+                if (batch.capacity() > 1 << 20) {
+                    batch.trimToSize();
+                }
+            }
+            written = head;
+            if (count == 0 && running) {
+                park();
+            }
+        }
+    }
+
+    // Sleeps until a producer, flush or close wakes it, no periodic wake ups while nothing is logged
+    private void park() {
+        idle = true;
+        // An event published before idle was set did not unpark, it must be seen here
+        if (running && !hasNext()) {
+            LockSupport.park(this);
+        }
+        idle = false;
+    }
+
+    private boolean hasNext() {
+        return sequences.get((int) (head & mask)) == head + 1;
+    }
+
+    private static void format(Event event, StringBuilder out) {
+        out.append(TIME_FORMAT.format(Instant.ofEpochMilli(event.time))).append(' ')
+                .append(levelName(event.level)).append(": ").append(event.tag).append(": ");
+        if (event.parts != null) {
+            for (int i = 0; i < event.parts.length; i++) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                out.append(event.parts[i]);
+            }
+        } else {
+            out.append(event.first);
+            if (event.pair) {
+                out.append(' ').append(event.second);
+            }
+        }
+        out.append('\n');
+    }
+
+    private static void clear(Event event) {
+        event.tag = null;
+        event.first = null;
+        event.second = null;
+        event.parts = null;
+    }
+}
@@ -0,0 +1,13 @@
+package org.thingai.base.log;
+
+// Synchronous backend writing on the calling thread, errors to stderr
+public class ConsoleLog extends ILog {
+    @Override
+    protected void log(int level, String tag, String message) {
+        if (level >= ERROR) {
+            System.err.println(levelName(level) + ": " + tag + ": " + message);
+        } else {
+            System.out.println(levelName(level) + ": " + tag + ": " + message);
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package org.thingai.base.log;
 
+/**
+ * Static logging facade. Messages go to the backend set with {@link #setBackend}, a synchronous
+ * {@link ConsoleLog} by default or an {@link AsyncLog} for a background writer. Filtered out calls
+ * cost a field read; use the one and two part overloads to avoid the varargs array and
+ * {@link #isLoggable} to guard expensive message building.
+ */
 public abstract class ILog {
     public static final int DEBUG = 1;
     public static final int INFO = 2;
@@ -9,33 +15,150 @@ public abstract class ILog {
     public static int logLevel = DEBUG; // Default log level
     public static boolean ENABLE_LOGGING = false; // Flag to enable or disable logging
 
-    protected static ILog instance;
+    private static final ILog DEFAULT_BACKEND = new ConsoleLog();
+    protected static volatile ILog instance = DEFAULT_BACKEND;
+
+    public static synchronized void setBackend(ILog backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Log backend cannot be null.");
+        }
+        instance = backend;
+    }
+
+    public static boolean isDefaultBackend() {
+        return instance == DEFAULT_BACKEND;
+    }
+
+    // Installs the backend only while the default console backend is in place
+    public static synchronized boolean setBackendIfDefault(ILog backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Log backend cannot be null.");
+        }
+        if (instance != DEFAULT_BACKEND) {
+            return false;
+        }
+        instance = backend;
+        return true;
+    }
+
+    // Goes back to the console backend, but only if this backend is still the one installed
+    public static synchronized boolean resetBackend(ILog backend) {
+        if (instance != backend) {
+            return false;
+        }
+        instance = DEFAULT_BACKEND;
+        return true;
+    }
+
+    public static ILog getBackend() {
+        return instance;
+    }
+
+    public static boolean isLoggable(int level) {
+        return ENABLE_LOGGING && logLevel <= level;
+    }
+
+    public static void d(String tag, String message) {
+        if (isLoggable(DEBUG)) {
+            instance.log(DEBUG, tag, message);
+        }
+    }
+
+    public static void d(String tag, String first, String second) {
+        if (isLoggable(DEBUG)) {
+            instance.log(DEBUG, tag, first, second);
+        }
+    }
 
     public static void d(String tag, String... object) {
-        if (ENABLE_LOGGING && logLevel <= DEBUG) {
-            String message = String.join(" ", object);
-            System.out.println("DEBUG: " + tag + ": " + message);
+        if (isLoggable(DEBUG)) {
+            instance.log(DEBUG, tag, object);
+        }
+    }
+
+    public static void i(String tag, String message) {
+        if (isLoggable(INFO)) {
+            instance.log(INFO, tag, message);
+        }
+    }
+
+    public static void i(String tag, String first, String second) {
+        if (isLoggable(INFO)) {
+            instance.log(INFO, tag, first, second);
         }
     }
 
     public static void i(String tag, String... object) {
-        if (ENABLE_LOGGING && logLevel <= INFO) {
-            String message = String.join(" ", object);
-            System.out.println("INFO: " + tag + ": " + message);
+        if (isLoggable(INFO)) {
+            instance.log(INFO, tag, object);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        if (isLoggable(WARN)) {
+            instance.log(WARN, tag, message);
+        }
+    }
+
+    public static void w(String tag, String first, String second) {
+        if (isLoggable(WARN)) {
+            instance.log(WARN, tag, first, second);
         }
     }
 
     public static void w(String tag, String... object) {
-        if (ENABLE_LOGGING && logLevel <= WARN) {
-            String message = String.join(" ", object);
-            System.out.println("WARN: " + tag + ": " + message);
+        if (isLoggable(WARN)) {
+            instance.log(WARN, tag, object);
+        }
+    }
+
+    public static void e(String tag, String message) {
+        if (isLoggable(ERROR)) {
+            instance.log(ERROR, tag, message);
+        }
+    }
+
+    public static void e(String tag, String first, String second) {
+        if (isLoggable(ERROR)) {
+            instance.log(ERROR, tag, first, second);
         }
     }
 
     public static void e(String tag, String... object) {
-        if (ENABLE_LOGGING && logLevel <= ERROR) {
-            String message = String.join(" ", object);
-            System.err.println("ERROR: " + tag + ": " + message);
+        if (isLoggable(ERROR)) {
+            instance.log(ERROR, tag, object);
+        }
+    }
+
+    public static String levelName(int level) {
+        switch (level) {
+            case DEBUG:
+                return "DEBUG";
+            case INFO:
+                return "INFO";
+            case WARN:
+                return "WARN";
+            default:
+                return "ERROR";
         }
     }
+
+    // Backend side, parts are joined with a space
+    protected abstract void log(int level, String tag, String message);
+
+    protected void log(int level, String tag, String first, String second) {
+        log(level, tag, first + " " + second);
+    }
+
+    protected void log(int level, String tag, String[] parts) {
+        log(level, tag, String.join(" ", parts));
+    }
+
+    // Blocks until everything logged so far is written
+    public void flush() {
+    }
+
+    public void close() {
+        flush();
+    }
 }
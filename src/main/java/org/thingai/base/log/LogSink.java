@@ -0,0 +1,37 @@
+package org.thingai.base.log;
+
+import java.io.IOException;
+
+/**
+ * Destination for {@link AsyncLog}. Only the writer thread calls it, with whole formatted lines
+ * batched into one {@link #write}.
+ */
+public interface LogSink {
+    void write(CharSequence text) throws IOException;
+
+    void flush() throws IOException;
+
+    default void close() throws IOException {
+        flush();
+    }
+
+    static LogSink console() {
+        return new LogSink() {
+            @Override
+            public void write(CharSequence text) {
+                System.out.append(text);
+            }
+
+            @Override
+            public void flush() {
+                System.out.flush();
+            }
+
+            @Override
+            public void close() {
+                // Never close stdout
+                System.out.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package org.thingai.base.log;
+
+// What AsyncLog does when its ring buffer is full, errors are always kept
+public enum OverflowPolicy {
+    // Wait for the writer to free a slot
+    BLOCK,
+    // Discard the event, the writer reports how many were lost
+    DROP,
+    // Keep one in every sample rate overflowing events (blocking for it), drop the rest
+    SAMPLE
+}
@@ -0,0 +1,317 @@
+package org.thingai.base.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link LogSink} appending to a file through a buffered {@link FileChannel}. The active file is
+ * rolled to {@code <name>.<timestamp>} when it reaches {@link #setMaxFileSize} bytes or crosses a
+ * {@link #setRollInterval} boundary (local time); rolled files are gzipped on a background thread
+ * and only the newest {@link #setMaxHistory} are kept. Meant to be driven by a single writer,
+ * normally {@link AsyncLog}, so a whole batch costs one {@code write} call.
+ */
+public class RollingFileSink implements LogSink {
+    public enum FsyncPolicy {
+        // Leave it to the OS, fastest, recent lines can be lost on power failure
+        NEVER,
+        // fsync whenever the writer flushes, i.e. after every batch
+        EVERY_FLUSH,
+        // fsync on flush at most once per fsync interval
+        INTERVAL
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // A broken surrogate pair becomes '?' instead of stopping the rest of the batch
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private FileChannel channel;
+    private long fileSize;
+    private long nextRollTime;
+    private long lastFsync;
+    // No roll before this after a failed one
+    private long rollRetryTime;
+    long rollRetryMillis = TimeUnit.MINUTES.toMillis(1);
+    private ExecutorService compressor;
+
+    private long maxFileSize = 10L * 1024 * 1024;
+    private long rollIntervalMillis = TimeUnit.DAYS.toMillis(1);
+    private int maxHistory = 7;
+    private boolean compress = true;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+    private long fsyncIntervalMillis = 1000;
+
+    public RollingFileSink(Path file) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        open();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    // Zero disables size based rolling
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public long getRollInterval(TimeUnit unit) {
+        return unit.convert(rollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Zero disables time based rolling
+    public void setRollInterval(long duration, TimeUnit unit) {
+        this.rollIntervalMillis = unit.toMillis(duration);
+        this.nextRollTime = nextRollTime(System.currentTimeMillis());
+    }
+
+    public int getMaxHistory() {
+        return maxHistory;
+    }
+
+    // Rolled files to keep, zero keeps all
+    public void setMaxHistory(int maxHistory) {
+        this.maxHistory = maxHistory;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public long getFsyncInterval(TimeUnit unit) {
+        return unit.convert(fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void setFsyncInterval(long duration, TimeUnit unit) {
+        this.fsyncIntervalMillis = unit.toMillis(duration);
+    }
+
+    @Override
+    public void write(CharSequence text) throws IOException {
+        // A failed reopen during a roll is retried with the next batch
+        if (!channel.isOpen()) {
+            open();
+        }
+        long now = System.currentTimeMillis();
+        if (shouldRoll(now)) {
+            roll(now);
+        }
+
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        encoder.reset();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        long now = System.currentTimeMillis();
+        if (fsyncPolicy == FsyncPolicy.EVERY_FLUSH
+                || fsyncPolicy == FsyncPolicy.INTERVAL && now - lastFsync >= fsyncIntervalMillis) {
+            channel.force(false);
+            lastFsync = now;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+        }
+        channel.close();
+        if (compressor != null) {
+            // Let pending compressions finish, they are quick and leave no half written archive
+            compressor.shutdown();
+            try {
+                compressor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+        nextRollTime = nextRollTime(System.currentTimeMillis());
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private boolean shouldRoll(long now) {
+        if (fileSize + buffer.position() == 0 || now < rollRetryTime) {
+            return false;
+        }
+        if (maxFileSize > 0 && fileSize + buffer.position() >= maxFileSize) {
+            return true;
+        }
+        return rollIntervalMillis > 0 && now >= nextRollTime;
+    }
+
+    private void roll(long now) throws IOException {
+        drain();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+        }
+        channel.close();
+
+        // The suffix sorts after the plain name, so rolled files stay in order by name
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmssSSS");
+        String base = file.getFileName() + "." + format.format(new Date(now));
+        Path rolled = file.resolveSibling(base);
+        for (int i = 1; Files.exists(rolled) || Files.exists(rolled.resolveSibling(rolled.getFileName() + ".gz")); i++) {
+            rolled = file.resolveSibling(base + "_" + i);
+        }
+        try {
+            move(file, rolled);
+        } catch (IOException e) {
+            // E.g. another process holds the file open on Windows, keep appending and roll later
+            System.err.println("Cannot roll log file " + file + ", retrying later: " + e.getMessage());
+            long pendingRoll = nextRollTime;
+            rollRetryTime = now + rollRetryMillis;
+            open();
+            nextRollTime = pendingRoll;
+            return;
+        }
+        open();
+
+        Path target = rolled;
+        compressor().execute(() -> {
+            if (compress) {
+                gzip(target);
+            }
+            prune();
+        });
+    }
+
+    void move(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ExecutorService compressor() {
+        if (compressor == null) {
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RollingFileSink-compress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compressor;
+    }
+
+    private static void gzip(Path source) {
+        Path target = source.resolveSibling(source.getFileName() + ".gz");
+        Path partial = source.resolveSibling(source.getFileName() + ".gz.tmp");
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), BUFFER_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Rolled names sort by their timestamp, delete the oldest beyond the history limit
+    private void prune() {
+        if (maxHistory <= 0) {
+            return;
+        }
+        String prefix = file.getFileName() + ".";
+        List<Path> rolled = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(file.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path path : files) {
+                if (!path.getFileName().toString().endsWith(".tmp")) {
+                    rolled.add(path);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        rolled.sort(null);
+        for (int i = 0; i < rolled.size() - maxHistory; i++) {
+            try {
+                Files.deleteIfExists(rolled.get(i));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private long nextRollTime(long now) {
+        if (rollIntervalMillis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        // Align to the interval in local time, so daily files start at midnight
+        long offset = TimeZone.getDefault().getOffset(now);
+        return ((now + offset) / rollIntervalMillis + 1) * rollIntervalMillis - offset;
+    }
+}
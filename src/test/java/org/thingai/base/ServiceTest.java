@@ -0,0 +1,111 @@
+package org.thingai.base;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceTest {
+
+    static class TestService extends Service {
+        TestService() {
+            name = "service-test";
+        }
+
+        @Override
+        protected void onServiceInit() {
+
+        }
+    }
+
+    @TempDir
+    Path home;
+
+    private String previousHome;
+    private TestService service;
+
+    @BeforeEach
+    void setUp() {
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+        service = new TestService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        System.setProperty("user.home", previousHome);
+    }
+
+    @Test
+    void invalidTaskLimitFailsBeforeAnythingStarts() {
+        service.maxConcurrentTasks = 0;
+
+        assertThrows(IllegalArgumentException.class, service::init);
+        assertFalse(Files.exists(home.resolve(".thingai")));
+    }
+
+    @Test
+    void scheduledRunsWaitForATaskSlot() throws Exception {
+        service.maxConcurrentTasks = 1;
+        service.shutdownTimeoutMillis = 1000;
+        service.init();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = service.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CountDownLatch ran = new CountDownLatch(1);
+        service.schedule(ran::countDown, 0, TimeUnit.MILLISECONDS);
+
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS), "scheduled run ignored the task limit");
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitingScheduledRunsDoNotHoldThreads() throws Exception {
+        service.maxConcurrentTasks = 1;
+        service.shutdownTimeoutMillis = 1000;
+        service.init();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = service.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CountDownLatch ran = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            service.schedule(ran::countDown, 0, TimeUnit.MILLISECONDS);
+        }
+        // Let the scheduler fire every tick
+        Thread.sleep(200);
+
+        // Only the blocker has a task thread, the runs wait in the queue
+        assertEquals(1, taskThreads());
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    // Task threads parked in a wait, idle pool threads are in a timed wait
+    private static long taskThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("service-test-task-") && thread.getState() == Thread.State.WAITING)
+                .count();
+    }
+}
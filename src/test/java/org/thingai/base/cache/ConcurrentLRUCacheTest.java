@@ -0,0 +1,195 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLRUCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(3);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        // Buffered, applied when the next put drains the read buffers
+        cache.get(1);
+        cache.put(4, "d");
+
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+        assertTrue(cache.containsKey(4));
+    }
+
+    @Test
+    void replaceMovesEntryToHead() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(1, "a2");
+        cache.put(3, "c");
+
+        assertEquals("a2", cache.get(1));
+        assertFalse(cache.containsKey(2));
+    }
+
+    @Test
+    void overflowingReadBufferOnlyDropsRecencyUpdates() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        // Far more reads than a read buffer holds, with no put in between to drain it
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, cache.get(i));
+            }
+        }
+        cache.get(0);
+        cache.put(100, 100);
+
+        assertEquals(100, cache.size());
+        assertTrue(cache.containsKey(0));
+        assertTrue(cache.containsKey(100));
+    }
+
+    @Test
+    void removedEntryInReadBufferIsNotRelinked() {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        cache.remove(1);
+        // Draining the stale read must not bring key 1 back into the recency list
+        cache.put(3, "c");
+        cache.put(4, "d");
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+    }
+
+    @Test
+    void hotKeysSurviveColdInsertsUnderConcurrentReads() throws InterruptedException {
+        int capacity = 100;
+        int hotKeys = 10;
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(capacity);
+        for (int i = 0; i < hotKeys; i++) {
+            cache.put(i, i);
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong missedHotReads = new AtomicLong();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    for (int i = 0; i < hotKeys; i++) {
+                        if (cache.get(i) == null) {
+                            missedHotReads.incrementAndGet();
+                        }
+                        reads.incrementAndGet();
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // Every cold insert waits for a round of reads, so hot keys are always read between puts
+        for (int key = hotKeys; key < hotKeys + 3 * capacity; key++) {
+            long seen = reads.get();
+            while (reads.get() < seen + hotKeys) {
+                Thread.yield();
+            }
+            cache.put(key, key);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(capacity, cache.size());
+        for (int i = 0; i < hotKeys; i++) {
+            assertTrue(cache.containsKey(i), "hot key " + i + " was evicted");
+        }
+        assertEquals(0, missedHotReads.get());
+    }
+
+    @Test
+    void staysConsistentUnderMixedConcurrentUse() throws InterruptedException {
+        int capacity = 64;
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(capacity);
+        AtomicLong evictions = new AtomicLong();
+        // Assertions in other threads would only kill the thread, count the failures instead
+        AtomicLong mismatches = new AtomicLong();
+        cache.setRemovalListener((key, value, cause) -> {
+            if (!key.equals(value)) {
+                mismatches.incrementAndGet();
+            }
+            if (cause == RemovalCause.SIZE) {
+                evictions.incrementAndGet();
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 50_000; i++) {
+                    int key = random.nextInt(256);
+                    int operation = random.nextInt(10);
+                    if (operation < 7) {
+                        Integer value = cache.get(key);
+                        if (value != null && value != key) {
+                            mismatches.incrementAndGet();
+                        }
+                    } else if (operation < 9) {
+                        cache.put(key, key);
+                    } else {
+                        cache.remove(key);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, mismatches.get());
+        assertTrue(cache.size() <= capacity);
+        assertTrue(evictions.get() > 0);
+        // Every remaining key is still linked: filling with new keys evicts them all
+        for (int key = 1000; key < 1000 + capacity; key++) {
+            cache.put(key, key);
+        }
+        assertEquals(capacity, cache.size());
+        for (int key = 0; key < 256; key++) {
+            assertFalse(cache.containsKey(key));
+        }
+    }
+
+    @Test
+    void clearDropsEverything() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+        cache.clear();
+        cache.put(42, 42);
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(1));
+    }
+}
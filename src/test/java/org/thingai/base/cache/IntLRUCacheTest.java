@@ -0,0 +1,36 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntLRUCacheTest {
+
+    @Test
+    void negativeAndExtremeKeysAreDistinct() {
+        IntLRUCache<String> cache = new IntLRUCache<>(4);
+        cache.put(-1, "minus one");
+        cache.put(Integer.MIN_VALUE, "min");
+        cache.put(Integer.MAX_VALUE, "max");
+        cache.put(0, "zero");
+
+        assertEquals("minus one", cache.get(-1));
+        assertEquals("min", cache.get(Integer.MIN_VALUE));
+        assertEquals("max", cache.get(Integer.MAX_VALUE));
+        assertEquals("zero", cache.get(0));
+    }
+
+    @Test
+    void evictsAndRemovesLikeLongLRUCache() {
+        IntLRUCache<String> cache = new IntLRUCache<>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        cache.put(3, "c");
+
+        assertFalse(cache.containsKey(2));
+        assertEquals("a", cache.remove(1));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+    }
+}
@@ -0,0 +1,133 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LRUCacheTest {
+    private long nanos;
+
+    private LRUCache<String, Integer> cache(int size, Map<String, LRUCache.CacheNode<String, Integer>> map) {
+        LRUCache<String, Integer> cache = new LRUCache<>(size, map);
+        cache.setTicker(() -> nanos);
+        return cache;
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LRUCache<String, Integer> cache = cache(2, new HashMap<>());
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("c"));
+    }
+
+    @Test
+    void entriesCarryNoExpiryStateWithoutExpiry() {
+        Map<String, LRUCache.CacheNode<String, Integer>> map = new HashMap<>();
+        LRUCache<String, Integer> cache = cache(10, map);
+        cache.put("a", 1);
+
+        assertSame(LRUCache.CacheNode.class, map.get("a").getClass());
+    }
+
+    @Test
+    void expiresAfterWrite() {
+        LRUCache<String, Integer> cache = cache(10, new HashMap<>());
+        cache.setExpireAfterWrite(10, TimeUnit.SECONDS);
+        cache.put("a", 1);
+
+        nanos += TimeUnit.SECONDS.toNanos(9);
+        assertEquals(1, cache.get("a"));
+        nanos += TimeUnit.SECONDS.toNanos(1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void expiresAfterAccess() {
+        LRUCache<String, Integer> cache = cache(10, new HashMap<>());
+        cache.setExpireAfterAccess(10, TimeUnit.SECONDS);
+        cache.put("a", 1);
+
+        for (int i = 0; i < 5; i++) {
+            nanos += TimeUnit.SECONDS.toNanos(9);
+            assertEquals(1, cache.get("a"));
+        }
+        nanos += TimeUnit.SECONDS.toNanos(10);
+        assertFalse(cache.containsKey("a"));
+    }
+
+    @Test
+    void perEntryTimeToLiveOverridesCacheSettings() {
+        LRUCache<String, Integer> cache = cache(10, new HashMap<>());
+        cache.put("short", 1, 1, TimeUnit.SECONDS);
+        cache.put("plain", 2);
+
+        nanos += TimeUnit.SECONDS.toNanos(2);
+        assertNull(cache.get("short"));
+        assertEquals(2, cache.get("plain"));
+    }
+
+    @Test
+    void timerWheelDropsExpiredEntriesOnPut() {
+        List<String> expired = new ArrayList<>();
+        LRUCache<String, Integer> cache = cache(100, new HashMap<>());
+        cache.setRemovalListener((key, value, cause) -> {
+            if (cause == RemovalCause.EXPIRED) {
+                expired.add(key);
+            }
+        });
+        cache.setExpireAfterWrite(1, TimeUnit.MINUTES);
+        for (int i = 0; i < 50; i++) {
+            cache.put("k" + i, i);
+        }
+
+        nanos += TimeUnit.MINUTES.toNanos(5);
+        cache.put("fresh", 0);
+
+        assertEquals(50, expired.size());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void rewriteOfEntryFromBeforeExpiryMakesItExpire() {
+        Map<String, LRUCache.CacheNode<String, Integer>> map = new HashMap<>();
+        LRUCache<String, Integer> cache = cache(10, map);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.setExpireAfterWrite(1, TimeUnit.SECONDS);
+        cache.put("a", 3);
+
+        assertInstanceOf(LRUCache.TimedNode.class, map.get("a"));
+        nanos += TimeUnit.SECONDS.toNanos(2);
+        assertNull(cache.get("a"));
+        // Written before expiry was set, it does not expire
+        assertEquals(2, cache.get("b"));
+    }
+
+    @Test
+    void removeAndClearDescheduleTimedEntries() {
+        LRUCache<String, Integer> cache = cache(10, new HashMap<>());
+        cache.setExpireAfterWrite(1, TimeUnit.SECONDS);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.remove("a"));
+        cache.clear();
+        cache.put("c", 3);
+
+        nanos += TimeUnit.SECONDS.toNanos(2);
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+    }
+}
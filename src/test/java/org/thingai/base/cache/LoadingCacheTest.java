@@ -0,0 +1,112 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadingCacheTest {
+
+    // Runs refreshes when the test says so
+    static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            pending.forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    void loadsOnceAndCaches() {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(10, key -> {
+            loads.incrementAndGet();
+            return "v" + key;
+        }, new ManualExecutor());
+
+        assertEquals("v1", cache.get(1));
+        assertEquals("v1", cache.get(1));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidateDuringRefreshDoesNotBringOldValueBack() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(10, key -> "v0", executor);
+        cache.get(1);
+
+        // The refresh is started before the source changes and the key is invalidated
+        CompletableFuture<String> refresh = cache.refresh(1);
+        cache.invalidate(1);
+        executor.runAll();
+
+        assertEquals("v0", refresh.get(5, TimeUnit.SECONDS));
+        assertNull(cache.getIfPresent(1));
+    }
+
+    @Test
+    void invalidateWhileLoadingLetsTheNextCallerLoadAgain() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(10, key -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                release.await();
+                return "stale";
+            }
+            return "fresh";
+        }, new ManualExecutor());
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get(1));
+        loading.await();
+        cache.invalidate(1);
+        assertEquals("fresh", cache.get(1));
+        release.countDown();
+
+        // The stale load still answers its own caller, but does not replace the fresh value
+        assertEquals("stale", first.get(5, TimeUnit.SECONDS));
+        assertEquals("fresh", cache.getIfPresent(1));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateAllFencesEveryInFlightRefresh() {
+        ManualExecutor executor = new ManualExecutor();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(10, key -> "v" + key, executor);
+        cache.refresh(1);
+        cache.refresh(2);
+        cache.invalidateAll();
+        executor.runAll();
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void refreshCompletesIntoCacheWhenNotInvalidated() {
+        ManualExecutor executor = new ManualExecutor();
+        AtomicInteger version = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(10, key -> "v" + version.get(), executor);
+        cache.get(1);
+        version.set(1);
+        cache.refresh(1);
+
+        assertEquals("v0", cache.getIfPresent(1));
+        executor.runAll();
+        assertEquals("v1", cache.getIfPresent(1));
+    }
+}
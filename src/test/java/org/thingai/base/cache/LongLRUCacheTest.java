@@ -0,0 +1,138 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongLRUCacheTest {
+    // Capacity 8 gives a table of 16 slots
+    private static final int CAPACITY = 8;
+    private static final int MASK = 15;
+
+    // Keys whose probe sequence starts at the given slot
+    private static List<Long> keysHomedAt(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            if ((LongLRUCache.hash(key) & MASK) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LongLRUCache<String> cache = new LongLRUCache<>(2);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.get(1);
+        cache.put(3, "c");
+
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+    }
+
+    @Test
+    void removeShiftsCollidingKeysBack() {
+        LongLRUCache<Long> cache = new LongLRUCache<>(CAPACITY);
+        List<Long> colliding = keysHomedAt(4, 3);
+        // Homed one slot later, so it lands behind the colliding run
+        long neighbour = keysHomedAt(5, 1).get(0);
+        for (long key : colliding) {
+            cache.put(key, key);
+        }
+        cache.put(neighbour, neighbour);
+
+        assertEquals(colliding.get(0), cache.remove(colliding.get(0)));
+        assertFalse(cache.containsKey(colliding.get(0)));
+        assertEquals(colliding.get(1), cache.get(colliding.get(1)));
+        assertEquals(colliding.get(2), cache.get(colliding.get(2)));
+        assertEquals(neighbour, cache.get(neighbour));
+
+        assertEquals(colliding.get(2), cache.remove(colliding.get(2)));
+        assertEquals(colliding.get(1), cache.get(colliding.get(1)));
+        assertEquals(neighbour, cache.get(neighbour));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void removeShiftsRunsThatWrapAroundTheTable() {
+        LongLRUCache<Long> cache = new LongLRUCache<>(CAPACITY);
+        List<Long> last = keysHomedAt(MASK, 3);
+        long first = keysHomedAt(0, 1).get(0);
+        for (long key : last) {
+            cache.put(key, key);
+        }
+        cache.put(first, first);
+
+        cache.remove(last.get(0));
+        cache.remove(last.get(1));
+
+        assertEquals(last.get(2), cache.get(last.get(2)));
+        assertEquals(first, cache.get(first));
+        assertFalse(cache.containsKey(last.get(0)));
+        assertFalse(cache.containsKey(last.get(1)));
+    }
+
+    @Test
+    void evictionOfCollidingKeyKeepsTheRestReachable() {
+        LongLRUCache<Long> cache = new LongLRUCache<>(CAPACITY);
+        List<Long> colliding = keysHomedAt(7, CAPACITY + 1);
+        for (long key : colliding) {
+            cache.put(key, key);
+        }
+
+        assertEquals(CAPACITY, cache.size());
+        assertFalse(cache.containsKey(colliding.get(0)));
+        for (int i = 1; i < colliding.size(); i++) {
+            assertEquals(colliding.get(i), cache.get(colliding.get(i)));
+        }
+    }
+
+    @Test
+    void matchesLinkedHashMapUnderRandomOperations() {
+        LongLRUCache<Long> cache = new LongLRUCache<>(CAPACITY);
+        Map<Long, Long> model = new LinkedHashMap<>(16, 0.75f, true);
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(32);
+            int operation = random.nextInt(3);
+            if (operation == 0) {
+                assertEquals(model.get(key), cache.get(key));
+            } else if (operation == 1) {
+                cache.put(key, key + i);
+                model.put(key, key + i);
+                if (model.size() > CAPACITY) {
+                    model.remove(model.keySet().iterator().next());
+                }
+            } else {
+                assertEquals(model.remove(key), cache.remove(key));
+            }
+            assertEquals(model.size(), cache.size());
+        }
+        for (long key = 0; key < 32; key++) {
+            assertEquals(model.containsKey(key), cache.containsKey(key));
+        }
+    }
+
+    @Test
+    void clearAllowsReuse() {
+        LongLRUCache<String> cache = new LongLRUCache<>(4);
+        for (long key = 0; key < 4; key++) {
+            cache.put(key, "v" + key);
+        }
+        cache.clear();
+        cache.put(10, "x");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(0));
+        assertEquals("x", cache.get(10));
+    }
+}
@@ -0,0 +1,114 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapCacheTest {
+
+    // Records of 4 byte values take 12 bytes with the header
+    private static OffHeapCache<String, String> cache(int capacityBytes, List<String> removals) {
+        OffHeapCache<String, String> cache = new OffHeapCache<>(capacityBytes, Serializer.string());
+        cache.setRemovalListener((key, value, cause) -> removals.add(key + "=" + value + ":" + cause));
+        return cache;
+    }
+
+    @Test
+    void roundTripsValues() {
+        List<String> removals = new ArrayList<>();
+        OffHeapCache<String, String> cache = cache(1024, removals);
+        cache.put("a", "caf\u00e9");
+        cache.put("b", "");
+
+        assertEquals("caf\u00e9", cache.get("a"));
+        assertEquals("", cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(2, cache.size());
+
+        assertEquals("caf\u00e9", cache.remove("a"));
+        assertFalse(cache.containsKey("a"));
+        assertEquals(List.of("a=caf\u00e9:EXPLICIT"), removals);
+        assertEquals(2, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+    }
+
+    @Test
+    void recordThatDoesNotFitAtTheEndWrapsToTheStart() {
+        List<String> removals = new ArrayList<>();
+        OffHeapCache<String, String> cache = cache(40, removals);
+        cache.put("k1", "aaaa");
+        cache.put("k2", "bbbb");
+        cache.put("k3", "cccc");
+        // 4 bytes left at the end, padded, k4 goes to offset 0 over k1
+        cache.put("k4", "dddd");
+
+        assertEquals(List.of("k1=aaaa:SIZE"), removals);
+        assertEquals("bbbb", cache.get("k2"));
+        assertEquals("cccc", cache.get("k3"));
+        assertEquals("dddd", cache.get("k4"));
+
+        // The next wrap skips the padding
+        cache.put("k5", "eeee");
+        cache.put("k6", "ffff");
+        cache.put("k7", "gggg");
+        assertEquals(List.of("k1=aaaa:SIZE", "k2=bbbb:SIZE", "k3=cccc:SIZE", "k4=dddd:SIZE"), removals);
+        assertEquals("eeee", cache.get("k5"));
+        assertEquals("ffff", cache.get("k6"));
+        assertEquals("gggg", cache.get("k7"));
+        assertEquals(3, cache.size());
+        assertTrue(cache.getUsedBytes() <= cache.getCapacity());
+    }
+
+    @Test
+    void evictsOldestWritesFirst() {
+        List<String> removals = new ArrayList<>();
+        OffHeapCache<String, String> cache = cache(48, removals);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "v00" + i);
+        }
+
+        assertEquals(4, cache.size());
+        for (int i = 6; i < 10; i++) {
+            assertEquals("v00" + i, cache.get("k" + i));
+        }
+        assertEquals(6, cache.stats().getEvictionCount());
+        assertEquals("k0=v000:SIZE", removals.get(0));
+        assertEquals("k5=v005:SIZE", removals.get(5));
+    }
+
+    @Test
+    void replacedRecordIsPassedOverByEviction() {
+        List<String> removals = new ArrayList<>();
+        OffHeapCache<String, String> cache = cache(48, removals);
+        cache.put("a", "old1");
+        cache.put("b", "bbbb");
+        cache.put("a", "new1");
+        assertEquals(List.of("a=old1:REPLACED"), removals);
+        assertEquals("new1", cache.get("a"));
+
+        // Evicting the dead first record of a must not drop the live one
+        cache.put("c", "cccc");
+        cache.put("d", "dddd");
+        assertEquals("new1", cache.get("a"));
+        assertEquals(List.of("a=old1:REPLACED"), removals);
+        cache.put("e", "eeee");
+        assertEquals(List.of("a=old1:REPLACED", "b=bbbb:SIZE"), removals);
+    }
+
+    @Test
+    void valueLargerThanTheLogIsReportedAsEvicted() {
+        List<String> removals = new ArrayList<>();
+        OffHeapCache<String, String> cache = cache(16, removals);
+        cache.put("new", "far too large");
+        assertFalse(cache.containsKey("new"));
+
+        cache.put("old", "1234");
+        cache.put("old", "far too large");
+        assertFalse(cache.containsKey("old"));
+        assertEquals(List.of("new=far too large:SIZE", "old=1234:REPLACED", "old=far too large:SIZE"), removals);
+        assertEquals(2, cache.stats().getRemovalCount(RemovalCause.SIZE));
+    }
+}
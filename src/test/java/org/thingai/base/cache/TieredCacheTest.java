@@ -0,0 +1,61 @@
+package org.thingai.base.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredCacheTest {
+
+    private static TieredCache<String, String> cache(int l1MaxSize, int l2CapacityBytes, List<String> removals) {
+        TieredCache<String, String> cache = new TieredCache<>(l1MaxSize, l2CapacityBytes, Serializer.string());
+        cache.setRemovalListener((key, value, cause) -> removals.add(key + "=" + value + ":" + cause));
+        return cache;
+    }
+
+    @Test
+    void evictedEntriesAreDemotedAndPromotedOnTheirNextHit() {
+        List<String> removals = new ArrayList<>();
+        TieredCache<String, String> cache = cache(2, 1024, removals);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertTrue(cache.getL2().containsKey("a"));
+        assertFalse(cache.getL1().containsKey("a"));
+
+        assertEquals("1", cache.get("a"));
+        assertTrue(cache.getL1().containsKey("a"));
+        assertFalse(cache.getL2().containsKey("a"));
+        assertTrue(cache.getL2().containsKey("b"));
+        assertEquals(3, cache.size());
+        assertTrue(removals.isEmpty());
+    }
+
+    @Test
+    void putReplacesTheDemotedValue() {
+        List<String> removals = new ArrayList<>();
+        TieredCache<String, String> cache = cache(1, 1024, removals);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        cache.put("a", "3");
+
+        assertEquals(List.of("a=1:REPLACED"), removals);
+        assertEquals("3", cache.get("a"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void demotionThatDoesNotFitIsReportedAsEvicted() {
+        List<String> removals = new ArrayList<>();
+        TieredCache<String, String> cache = cache(1, 16, removals);
+        cache.put("large", "far too large for the log");
+        cache.put("b", "2");
+
+        assertFalse(cache.containsKey("large"));
+        assertEquals(List.of("large=far too large for the log:SIZE"), removals);
+        assertEquals(1, cache.stats().getRemovalCount(RemovalCause.SIZE));
+    }
+}
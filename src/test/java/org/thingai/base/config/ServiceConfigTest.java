@@ -0,0 +1,68 @@
+package org.thingai.base.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceConfigTest {
+
+    @TempDir
+    Path directory;
+
+    private static Properties properties(String... keyValues) {
+        Properties properties = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return properties;
+    }
+
+    @Test
+    void typedLookupsUseValuesParsedOnBuild() {
+        ServiceConfig config = ServiceConfig.of(properties("port", " 8080 ", "ratio", "0.5", "debug", "TRUE",
+                "big", "4294967296"));
+
+        assertEquals(8080, config.getInt("port", 0));
+        assertEquals(8080L, config.getLong("port", 0));
+        assertEquals(8080.0, config.getDouble("port", 0));
+        assertEquals(0.5, config.getDouble("ratio", 0));
+        assertTrue(config.getBoolean("debug", false));
+        assertEquals(4294967296L, config.getLong("big", 0));
+        assertThrows(IllegalArgumentException.class, () -> config.getInt("big", 0));
+        assertEquals(7, config.getInt("missing", 7));
+    }
+
+    @Test
+    void schemaRejectsMalformedValuesWhenBuilt() {
+        ConfigSchema schema = new ConfigSchema()
+                .define("port", ConfigSchema.Type.INT)
+                .define("debug", ConfigSchema.Type.BOOLEAN);
+
+        assertThrows(IllegalArgumentException.class, () -> ServiceConfig.of(properties("port", "80a"), schema));
+        assertThrows(IllegalArgumentException.class, () -> ServiceConfig.of(properties("debug", "yes"), schema));
+        // Undeclared keys and missing declared keys are fine
+        ServiceConfig config = ServiceConfig.of(properties("name", "x"), schema);
+        assertEquals(80, config.getInt("port", 80));
+    }
+
+    @Test
+    void malformedReloadKeepsThePreviousSnapshot() throws Exception {
+        Path file = directory.resolve("config.properties");
+        Files.writeString(file, "port=8080\n");
+        ConfigWatcher watcher = new ConfigWatcher(file, new ConfigSchema().define("port", ConfigSchema.Type.INT));
+        ServiceConfig initial = watcher.get();
+
+        Files.writeString(file, "port=eighty\n");
+        assertFalse(watcher.reload());
+        assertSame(initial, watcher.get());
+
+        Files.writeString(file, "port=9090\n");
+        assertTrue(watcher.reload());
+        assertEquals(9090, watcher.get().getInt("port", 0));
+    }
+}
@@ -0,0 +1,82 @@
+package org.thingai.base.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncDaoTest {
+
+    // findById blocks until released and returns its id, every other call fails
+    private static Dao blockingDao(CountDownLatch release, AtomicInteger running, AtomicInteger maxRunning) {
+        return (Dao) Proxy.newProxyInstance(Dao.class.getClassLoader(), new Class<?>[]{Dao.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("findById")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } finally {
+                running.decrementAndGet();
+            }
+            return args[1];
+        });
+    }
+
+    @Test
+    void waitingCallsDoNotHoldThreads() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger threads = new AtomicInteger();
+        // The pre-virtual-thread fallback, one new thread per task it is handed
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            threads.incrementAndGet();
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        AsyncDao dao = new AsyncDao(blockingDao(release, running, maxRunning), 2, executor);
+
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(dao.findById(Object.class, i));
+        }
+        assertEquals(2, threads.get());
+
+        release.countDown();
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(maxRunning.get() <= 2);
+        executor.shutdown();
+    }
+
+    @Test
+    void cancelledWaitingCallNeverRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AsyncDao dao = new AsyncDao(blockingDao(release, running, maxRunning), 1);
+
+        CompletableFuture<Object> first = dao.findById(Object.class, 1);
+        CompletableFuture<Object> second = dao.findById(Object.class, 2);
+        assertTrue(second.cancel(true));
+        CompletableFuture<Object> third = dao.findById(Object.class, 3);
+
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(3, third.get(5, TimeUnit.SECONDS));
+        assertTrue(second.isCancelled());
+        dao.close();
+    }
+}
@@ -0,0 +1,205 @@
+package org.thingai.base.dao;
+
+import org.junit.jupiter.api.Test;
+import org.thingai.base.dao.annotations.DaoColumn;
+import org.thingai.base.dao.annotations.DaoTable;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodHandleRowMapperTest {
+
+    @DaoTable(name = "sample")
+    static class Sample {
+        @DaoColumn(primaryKey = true)
+        private int id;
+        @DaoColumn
+        private long count;
+        @DaoColumn
+        private double ratio;
+        @DaoColumn
+        private float weight;
+        @DaoColumn
+        private boolean enabled;
+        @DaoColumn
+        private Integer boxedInt;
+        @DaoColumn
+        private Long boxedLong;
+        @DaoColumn
+        private Double boxedDouble;
+        @DaoColumn
+        private Boolean boxedBoolean;
+        @DaoColumn
+        private String name;
+        @DaoColumn
+        private byte[] payload;
+    }
+
+    // Parameters bound to a statement, in SQL form, indexed from 1
+    private static Object[] bind(RowMapper<Sample> mapper, Sample sample) throws SQLException {
+        Object[] parameters = new Object[mapper.getMetadata().getColumns().length + 1];
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("set")) {
+                        int index = (Integer) args[0];
+                        parameters[index] = method.getName().equals("setNull") ? null : args[1];
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        mapper.bind(statement, sample);
+        return parameters;
+    }
+
+    // Result set with a single row holding the given values, the way SQLite returns them
+    private static ResultSet row(Object[] values) {
+        Object[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("wasNull")) {
+                        return wasNull[0];
+                    }
+                    Object value = values[(Integer) args[0]];
+                    wasNull[0] = value == null;
+                    switch (method.getName()) {
+                        case "getInt":
+                            return value == null ? 0 : ((Number) value).intValue();
+                        case "getLong":
+                            return value == null ? 0L : ((Number) value).longValue();
+                        case "getDouble":
+                            return value == null ? 0.0 : ((Number) value).doubleValue();
+                        case "getFloat":
+                            return value == null ? 0f : ((Number) value).floatValue();
+                        case "getString":
+                        case "getBytes":
+                        case "getObject":
+                            return value;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    void roundTripsEveryColumnType() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        Sample sample = new Sample();
+        sample.id = 42;
+        sample.count = Long.MAX_VALUE;
+        sample.ratio = 0.25;
+        sample.weight = 1.5f;
+        sample.enabled = true;
+        sample.boxedInt = -7;
+        sample.boxedLong = 1L << 40;
+        sample.boxedDouble = Math.PI;
+        sample.boxedBoolean = true;
+        sample.name = "sensor \u00e9";
+        sample.payload = new byte[]{1, 2, 3};
+
+        Object[] parameters = bind(mapper, sample);
+        Sample read = mapper.map(row(parameters), mapper.getMetadata().getSelectOrdinals());
+
+        assertEquals(42, read.id);
+        assertEquals(Long.MAX_VALUE, read.count);
+        assertEquals(0.25, read.ratio);
+        assertEquals(1.5f, read.weight);
+        assertTrue(read.enabled);
+        assertEquals(-7, read.boxedInt);
+        assertEquals(1L << 40, read.boxedLong);
+        assertEquals(Math.PI, read.boxedDouble);
+        assertEquals(Boolean.TRUE, read.boxedBoolean);
+        assertEquals("sensor \u00e9", read.name);
+        assertArrayEquals(new byte[]{1, 2, 3}, read.payload);
+    }
+
+    @Test
+    void keepsNullsInBoxedColumns() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        Sample sample = new Sample();
+        sample.id = 1;
+
+        Object[] parameters = bind(mapper, sample);
+        Sample read = mapper.map(row(parameters), mapper.getMetadata().getSelectOrdinals());
+
+        assertNull(read.boxedInt);
+        assertNull(read.boxedLong);
+        assertNull(read.boxedDouble);
+        assertNull(read.name);
+        assertNull(read.payload);
+        // Booleans are stored as 0 or 1, a null one reads back as false
+        assertEquals(Boolean.FALSE, read.boxedBoolean);
+    }
+
+    @Test
+    void bindsBooleansAsIntegers() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        Sample sample = new Sample();
+        sample.enabled = true;
+
+        Object[] parameters = bind(mapper, sample);
+        int enabled = Arrays.asList(mapper.getMetadata().getColumns()).indexOf(mapper.getMetadata().getColumn("enabled")) + 1;
+        assertEquals(1, parameters[enabled]);
+    }
+
+    @Test
+    void skipsColumnsThatWereNotSelected() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        Sample sample = new Sample();
+        sample.id = 9;
+        sample.name = "kept";
+
+        Object[] parameters = bind(mapper, sample);
+        EntityMetadata.Column[] columns = mapper.getMetadata().getColumns();
+        int[] ordinals = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].primaryKey) {
+                ordinals[i] = i + 1;
+            }
+        }
+        Sample read = mapper.map(row(parameters), ordinals);
+
+        assertEquals(9, read.id);
+        assertNull(read.name);
+    }
+
+    @Test
+    void bindsPrimaryKeyAtTheGivenIndex() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        Sample sample = new Sample();
+        sample.id = 5;
+        Object[] parameters = new Object[4];
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    parameters[(Integer) args[0]] = args[1];
+                    return null;
+                });
+
+        mapper.bindPrimaryKey(statement, 3, sample);
+
+        assertEquals(5, parameters[3]);
+        assertNull(parameters[1]);
+    }
+
+    @Test
+    void bindsNullStringsAsVarchar() throws SQLException {
+        RowMapper<Sample> mapper = new MethodHandleRowMapper<>(EntityMetadata.of(Sample.class));
+        int[] sqlType = {0};
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("setNull")) {
+                        sqlType[0] = (Integer) args[1];
+                    }
+                    return null;
+                });
+
+        mapper.bind(statement, new Sample());
+
+        assertEquals(Types.VARCHAR, sqlType[0]);
+    }
+}
@@ -0,0 +1,121 @@
+package org.thingai.base.dao.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thingai.base.dao.RowMapper;
+import org.thingai.base.dao.RowMappers;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaoMapperProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    // Compiles the sources with the processor, returns the class output directory
+    private Path compile(String... sources) throws Exception {
+        Path sourceDir = Files.createDirectories(directory.resolve("src/sample"));
+        Path out = Files.createDirectories(directory.resolve("out"));
+        Path generated = Files.createDirectories(directory.resolve("gen"));
+        String[] arguments = new String[8 + sources.length / 2];
+        arguments[0] = "-processor";
+        arguments[1] = DaoMapperProcessor.class.getName();
+        arguments[2] = "-classpath";
+        arguments[3] = System.getProperty("java.class.path");
+        arguments[4] = "-d";
+        arguments[5] = out.toString();
+        arguments[6] = "-s";
+        arguments[7] = generated.toString();
+        for (int i = 0; i < sources.length; i += 2) {
+            Path file = sourceDir.resolve(sources[i] + ".java");
+            Files.writeString(file, sources[i + 1]);
+            arguments[8 + i / 2] = file.toString();
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, arguments);
+        assertEquals(0, result, errors.toString(StandardCharsets.UTF_8));
+        return out;
+    }
+
+    // Result set with a single row holding the given values, by ordinal
+    private static ResultSet row(Object... values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getInt":
+                    return ((Number) values[(Integer) args[0] - 1]).intValue();
+                case "getDouble":
+                    return ((Number) values[(Integer) args[0] - 1]).doubleValue();
+                case "getString":
+                case "getObject":
+                    return values[(Integer) args[0] - 1];
+                case "wasNull":
+                    return false;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @Test
+    void generatedMapperIsRegisteredAndUsed() throws Exception {
+        Path out = compile("Sensor",
+                "package sample;\n"
+                        + "import org.thingai.base.dao.annotations.DaoColumn;\n"
+                        + "import org.thingai.base.dao.annotations.DaoTable;\n"
+                        + "@DaoTable(name = \"sensor\")\n"
+                        + "public class Sensor {\n"
+                        + "    @DaoColumn(primaryKey = true) public int id;\n"
+                        + "    @DaoColumn public String name;\n"
+                        + "    @DaoColumn public Double reading;\n"
+                        + "}\n");
+
+        assertTrue(Files.exists(directory.resolve("gen/sample/Sensor_DaoMapper.java")));
+        assertEquals(List.of("sample.Sensor_DaoMapper"), Files.readAllLines(out.resolve(DaoMapperProcessor.SERVICES_FILE)));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{out.toUri().toURL()}, getClass().getClassLoader())) {
+            Class<?> sensorClass = loader.loadClass("sample.Sensor");
+            RowMapper<?> mapper = RowMappers.of(sensorClass);
+            assertEquals("sample.Sensor_DaoMapper", mapper.getClass().getName());
+            assertEquals("sensor", mapper.getMetadata().getTableName());
+
+            Object sensor = mapper.map(row(7, "probe", 1.5), new int[]{1, 2, 3});
+            assertEquals(7, sensorClass.getField("id").get(sensor));
+            assertEquals("probe", sensorClass.getField("name").get(sensor));
+            assertEquals(1.5, sensorClass.getField("reading").get(sensor));
+        }
+    }
+
+    @Test
+    void classWithPrivateColumnsFallsBackToReflection() throws Exception {
+        Path out = compile("Hidden",
+                "package sample;\n"
+                        + "import org.thingai.base.dao.annotations.DaoColumn;\n"
+                        + "import org.thingai.base.dao.annotations.DaoTable;\n"
+                        + "@DaoTable(name = \"hidden\")\n"
+                        + "public class Hidden {\n"
+                        + "    @DaoColumn(primaryKey = true) private int id;\n"
+                        + "}\n");
+
+        assertFalse(Files.exists(directory.resolve("gen/sample/Hidden_DaoMapper.java")));
+        assertFalse(Files.exists(out.resolve(DaoMapperProcessor.SERVICES_FILE)));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{out.toUri().toURL()}, getClass().getClassLoader())) {
+            RowMapper<?> mapper = RowMappers.of(loader.loadClass("sample.Hidden"));
+            assertEquals("MethodHandleRowMapper", mapper.getClass().getSimpleName());
+        }
+    }
+}
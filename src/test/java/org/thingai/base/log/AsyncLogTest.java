@@ -0,0 +1,78 @@
+package org.thingai.base.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLogTest {
+
+    static class RecordingSink implements LogSink {
+        final StringBuffer text = new StringBuffer();
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+
+        @Override
+        public void write(CharSequence batch) {
+            text.append(batch);
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public void flush() {
+
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+
+    @Test
+    void idleWriterIsWokenByTheNextEvent() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        AsyncLog log = new AsyncLog(sink, 64, OverflowPolicy.BLOCK);
+        log.log(ILog.INFO, "test", "first");
+        log.flush();
+        int writes = sink.writes.get();
+
+        // The writer parks with nothing to do, only a producer wakes it again
+        Thread.sleep(50);
+        assertEquals(writes, sink.writes.get());
+
+        log.log(ILog.INFO, "test", "second");
+        log.flush();
+        assertTrue(sink.text.toString().contains("test: second"));
+        log.close();
+    }
+
+    @Test
+    void concurrentCloseClosesTheSinkOnce() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        AsyncLog log = new AsyncLog(sink, 64, OverflowPolicy.BLOCK);
+        log.log(ILog.INFO, "test", "message");
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] closers = new Thread[4];
+        for (int i = 0; i < closers.length; i++) {
+            closers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                log.close();
+            });
+            closers[i].start();
+        }
+        start.countDown();
+        for (Thread closer : closers) {
+            closer.join();
+        }
+
+        assertEquals(1, sink.closes.get());
+        assertTrue(sink.text.toString().contains("test: message"));
+    }
+}
@@ -0,0 +1,63 @@
+package org.thingai.base.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingFileSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unpairedSurrogateIsReplacedAndTheBatchKept() throws Exception {
+        Path file = directory.resolve("app.log");
+        RollingFileSink sink = new RollingFileSink(file);
+        sink.write("broken \uD800 pair\nnext line\n");
+        sink.write("caf\u00e9\n");
+        sink.close();
+
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        assertEquals("broken ? pair\nnext line\ncaf\u00e9\n", text);
+    }
+
+    @Test
+    void failedRollKeepsWritingAndRetries() throws Exception {
+        Path file = directory.resolve("app.log");
+        AtomicInteger failures = new AtomicInteger(1);
+        RollingFileSink sink = new RollingFileSink(file) {
+            @Override
+            void move(Path source, Path target) throws IOException {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IOException("file is in use");
+                }
+                super.move(source, target);
+            }
+        };
+        sink.setCompress(false);
+        sink.setMaxFileSize(10);
+        sink.rollRetryMillis = 0;
+
+        sink.write("first line\n");
+        // Roll fails, the line goes to the unrolled file
+        sink.write("second line\n");
+        sink.flush();
+        assertEquals("first line\nsecond line\n", Files.readString(file, StandardCharsets.UTF_8));
+
+        // Roll succeeds
+        sink.write("third line\n");
+        sink.close();
+        assertEquals("third line\n", Files.readString(file, StandardCharsets.UTF_8));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+}